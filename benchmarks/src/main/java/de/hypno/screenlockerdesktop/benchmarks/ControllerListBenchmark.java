@@ -0,0 +1,49 @@
+package de.hypno.screenlockerdesktop.benchmarks;
+
+import de.hypno.screenlockerdesktop.SettingsController;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing a {@code list_ctrl} reply: the old split/stream/replace chain against
+ * {@link SettingsController#parseControllerList(String)}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ControllerListBenchmark {
+
+    @Param({"3", "50"})
+    public int users;
+
+    private String list;
+
+    @Setup
+    public void setUp() {
+        list = Frames.userArray(users);
+    }
+
+    @Benchmark
+    public List<String> legacySplit() {
+        return LegacyProtocol.parseControllerList(list);
+    }
+
+    @Benchmark
+    public List<String> parseControllerList() {
+        return SettingsController.parseControllerList(list);
+    }
+}
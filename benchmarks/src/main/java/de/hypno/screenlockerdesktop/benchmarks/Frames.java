@@ -0,0 +1,35 @@
+package de.hypno.screenlockerdesktop.benchmarks;
+
+/** Realistic inbound frames, shaped like what the server sends. */
+final class Frames {
+
+    private Frames() {
+    }
+
+    static String frame(String kind) {
+        switch (kind) {
+            case "auth":
+                return "{\"target\":\"someuser\",\"cmd\":\"auth\",\"data\":\"success\",\"apiVersion\":2}";
+            case "lock":
+                return "{\"target\":\"someuser\",\"cmd\":\"lock\",\"data\":null,\"apiVersion\":2}";
+            case "chat":
+                return "{\"target\":\"someuser\",\"cmd\":\"chat\",\"data\":\"You are feeling very relaxed now. Keep looking at the spiral.\",\"apiVersion\":2}";
+            case "list_ctrl":
+                return "{\"target\":\"someuser\",\"cmd\":\"list_ctrl\",\"data\":" + userArray(50) + ",\"apiVersion\":2}";
+            default:
+                throw new IllegalArgumentException(kind);
+        }
+    }
+
+    /** A JSON array of {@code count} user names. */
+    static String userArray(int count) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("\"controller_").append(i).append('"');
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -0,0 +1,74 @@
+package de.hypno.screenlockerdesktop.benchmarks;
+
+import de.hypno.screenlockerdesktop.KeystrokeRing;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost per keystroke of updating the overlay's keystroke history on a full 80-character
+ * history: the old StringBuilder that was trimmed and copied into every label on every
+ * key, against {@link KeystrokeRing} rendered once per pulse. One invocation types a
+ * burst of {@value #BURST} keys, as a fast typist or key repeat would within one frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeystrokeHistoryBenchmark {
+
+    static final int BURST = 4;
+
+    /** Number of screens, i.e. keystroke labels updated per render. */
+    @Param({"1", "3"})
+    public int screens;
+
+    private StringBuilder legacyHistory;
+    private KeystrokeRing ring;
+    private String[] labels;
+
+    @Setup
+    public void setUp() {
+        legacyHistory = new StringBuilder();
+        ring = new KeystrokeRing(80);
+        for (int i = 0; i < 80; i++) {
+            legacyHistory.append('x');
+            ring.append('x');
+        }
+        labels = new String[screens];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public String[] legacyStringBuilder() {
+        for (int i = 0; i < BURST; i++) {
+            LegacyProtocol.appendKeystroke(legacyHistory, "a", labels);
+        }
+        return labels;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public String[] ringRenderedPerPulse() {
+        for (int i = 0; i < BURST; i++) {
+            ring.append("a");
+        }
+        String text = ring.toString();
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = text;
+        }
+        return labels;
+    }
+}
@@ -0,0 +1,118 @@
+package de.hypno.screenlockerdesktop.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Verbatim copies of the protocol code paths as they were before the rewrite, kept as
+ * the baseline the benchmarks compare against.
+ */
+final class LegacyProtocol {
+
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm:ss.SSS");
+
+    private LegacyProtocol() {
+    }
+
+    /** The old {@code WebSocketManager.sendMessage} body, up to the bytes the library puts on the wire. */
+    static byte[] encode(String target, String cmd, Object data) {
+        String dataJson;
+        if (data == null) {
+            dataJson = "null";
+        } else if (data instanceof String) {
+            String escapedData = ((String) data).replace("\\", "\\\\").replace("\"", "\\\"");
+            dataJson = "\"" + escapedData + "\"";
+        } else {
+            dataJson = data.toString();
+        }
+
+        String jsonMessage = String.format(
+            "{\"target\": \"%s\", \"cmd\": \"%s\", \"data\": %s, \"apiVersion\": 2}",
+            target, cmd, dataJson
+        );
+        return jsonMessage.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** The old {@code WebSocketManager.log} line for an outgoing frame, minus the println. */
+    static String logLine(String jsonMessage) {
+        return String.format("[%s] [WebSocketManager] %s", LocalTime.now().format(TIME_FORMATTER), "SENDING message: " + jsonMessage);
+    }
+
+    /** The old {@code WebSocketManager.getJsonValue}. */
+    static String getJsonValue(String json, String key) {
+        // This parser needs to handle json arrays for the list_ctrl command.
+        // For simplicity, we assume the 'data' value is either a simple value or a well-formed array.
+        String keyPattern = "\"" + key + "\":";
+        int keyIndex = json.indexOf(keyPattern);
+        if (keyIndex == -1) {
+            return null;
+        }
+
+        int currentIndex = keyIndex + keyPattern.length();
+
+        // Skip leading whitespace to find the start of the value
+        while (currentIndex < json.length() && Character.isWhitespace(json.charAt(currentIndex))) {
+            currentIndex++;
+        }
+
+        if (currentIndex >= json.length()) {
+            return null; // No value found
+        }
+
+        char startChar = json.charAt(currentIndex);
+        if (startChar == '\"') {
+            // Value is a quoted string
+            int valueStartIndex = currentIndex + 1;
+            int valueEndIndex = json.indexOf('\"', valueStartIndex);
+            if (valueEndIndex == -1) return null;
+            return json.substring(valueStartIndex, valueEndIndex);
+        } else if (startChar == '[') {
+            // Value is a JSON array
+            int arrayEndIndex = json.indexOf(']', currentIndex);
+            if (arrayEndIndex == -1) return null;
+            return json.substring(currentIndex, arrayEndIndex + 1);
+        }
+        else {
+            // Value is not a quoted string (e.g., number, boolean, null)
+            int valueEndIndex = json.indexOf(',', currentIndex);
+            if (valueEndIndex == -1) {
+                valueEndIndex = json.indexOf('}', currentIndex);
+            }
+            if (valueEndIndex == -1) return null;
+            return json.substring(currentIndex, valueEndIndex).trim();
+        }
+    }
+
+    /** The parsing half of the old {@code SettingsController.updateControllerList}. */
+    static List<String> parseControllerList(String jsonList) {
+        if (jsonList == null || !jsonList.startsWith("[") || !jsonList.endsWith("]")) {
+            return null;
+        }
+        String content = jsonList.substring(1, jsonList.length() - 1).trim();
+        if(content.isEmpty()){
+            return List.of();
+        }
+        String[] users = content.split(",");
+        return Arrays.stream(users)
+            .map(u -> u.trim().replace("\"", ""))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * The old keystroke handling in {@code OverlayManager}: append, trim to 80 characters
+     * and set every screen's label to a fresh copy of the history.
+     */
+    static void appendKeystroke(StringBuilder keystrokeHistory, String keyText, String[] labels) {
+        keystrokeHistory.append(keyText);
+        if (keystrokeHistory.length() > 80) {
+            keystrokeHistory.delete(0, keystrokeHistory.length() - 80);
+        }
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = keystrokeHistory.toString();
+        }
+    }
+}
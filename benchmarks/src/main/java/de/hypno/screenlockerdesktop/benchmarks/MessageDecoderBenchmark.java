@@ -0,0 +1,63 @@
+package de.hypno.screenlockerdesktop.benchmarks;
+
+import de.hypno.screenlockerdesktop.Command;
+import de.hypno.screenlockerdesktop.InboundMessage;
+import de.hypno.screenlockerdesktop.MessageDecoder;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Per-message cost of reading {@code cmd} and {@code data} from an inbound frame: the old
+ * {@code getJsonValue} scans against {@link MessageDecoder}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageDecoderBenchmark {
+
+    @Param({"auth", "lock", "chat", "list_ctrl"})
+    public String kind;
+
+    private String frame;
+    private final InboundMessage message = new InboundMessage();
+
+    @Setup
+    public void setUp() {
+        frame = Frames.frame(kind);
+    }
+
+    @Benchmark
+    public void legacyGetJsonValue(Blackhole bh) {
+        // What the old handleMessage did: two scans, then a switch on the cmd string.
+        bh.consume(LegacyProtocol.getJsonValue(frame, "cmd"));
+        bh.consume(LegacyProtocol.getJsonValue(frame, "data"));
+    }
+
+    @Benchmark
+    public Command decodeCommand() {
+        // Enough for auth, lock and unlock, which never materialise data.
+        MessageDecoder.decode(frame, message);
+        return message.command();
+    }
+
+    @Benchmark
+    public void decodeCommandAndData(Blackhole bh) {
+        MessageDecoder.decode(frame, message);
+        bh.consume(message.command());
+        bh.consume(message.data());
+    }
+}
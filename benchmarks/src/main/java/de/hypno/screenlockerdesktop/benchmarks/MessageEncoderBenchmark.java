@@ -0,0 +1,61 @@
+package de.hypno.screenlockerdesktop.benchmarks;
+
+import de.hypno.screenlockerdesktop.MessageEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per-message cost of building an outbound frame, old path against {@link MessageEncoder}.
+ * Run with {@code -prof gc} and compare {@code gc.alloc.rate.norm} (bytes per message).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageEncoderBenchmark {
+
+    /** A single keystroke, a typical chat line and a line that needs escaping. */
+    @Param({"a", "I am getting very sleepy", "quote \" slash \\ tab \t umlaut ä"})
+    public String data;
+
+    private final MessageEncoder encoder = new MessageEncoder();
+    private final MessageEncoder compactEncoder = new MessageEncoder();
+
+    {
+        compactEncoder.setCompact(true);
+    }
+
+    @Benchmark
+    public byte[] legacyEncode() {
+        return LegacyProtocol.encode("someuser", "text", data);
+    }
+
+    @Benchmark
+    public String legacyEncodeAndLog() {
+        byte[] frame = LegacyProtocol.encode("someuser", "text", data);
+        return LegacyProtocol.logLine(new String(frame, StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public ByteBuffer encoder() {
+        return encoder.encode("someuser", "text", data);
+    }
+
+    @Benchmark
+    public ByteBuffer compactEncoder() {
+        return compactEncoder.encode("someuser", "text", data);
+    }
+}
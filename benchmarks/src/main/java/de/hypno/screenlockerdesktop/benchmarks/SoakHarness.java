@@ -0,0 +1,332 @@
+package de.hypno.screenlockerdesktop.benchmarks;
+
+import de.hypno.screenlockerdesktop.Command;
+import de.hypno.screenlockerdesktop.ConnectionListener;
+import de.hypno.screenlockerdesktop.ControlledUsersModel;
+import de.hypno.screenlockerdesktop.InboundMessage;
+import de.hypno.screenlockerdesktop.LatencyHistogram;
+import de.hypno.screenlockerdesktop.LockScreen;
+import de.hypno.screenlockerdesktop.Metrics;
+import de.hypno.screenlockerdesktop.WebSocketManager;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Drives real {@link WebSocketManager}s against a {@link StandInServer} through scripted
+ * scenarios and reports end-to-end latency percentiles and heap growth.
+ * <p>
+ * Each round runs a lock storm, a chat flood, a keystroke-text flood, a controller
+ * add/list/remove cycle, a server kill and restart, and a dead peer (the server stops
+ * answering without closing anything), and repeats until the duration is up. Latencies are measured from the server handing a frame to its socket to the
+ * client handing it to its {@link LockScreen} (server to client), or from the client's
+ * {@code sendMessage} to the server receiving it (client to server). The lock screen is
+ * headless, so the numbers cover the network and protocol path, not JavaFX rendering.
+ * <p>
+ * Usage: {@code java -cp benchmarks/target/benchmarks.jar
+ * de.hypno.screenlockerdesktop.benchmarks.SoakHarness [clients] [minutes] [port]},
+ * defaulting to 5 clients for 1 minute on port 18082. Use e.g. 180 minutes for a soak.
+ */
+public class SoakHarness {
+
+    private static final long AWAIT_MILLIS = 10_000;
+
+    private final int port;
+    private final List<Client> clients = new ArrayList<>();
+    private StandInServer server;
+
+    private final LatencyHistogram lockLatency = new LatencyHistogram();
+    private final LatencyHistogram unlockLatency = new LatencyHistogram();
+    private final LatencyHistogram chatLatency = new LatencyHistogram();
+    private final LatencyHistogram textLatency = new LatencyHistogram();
+    private final LatencyHistogram reconnectLatency = new LatencyHistogram();
+    private final LatencyHistogram deadPeerDetection = new LatencyHistogram();
+    private final AtomicInteger timeouts = new AtomicInteger();
+
+    public SoakHarness(int port) {
+        this.port = port;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int clientCount = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        long minutes = args.length > 1 ? Long.parseLong(args[1]) : 1;
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : 18082;
+
+        // Must be set before the client classes read them.
+        defaultProperty("hypno.reconnect.baseMs", "100");
+        defaultProperty("hypno.reconnect.capMs", "1000");
+        defaultProperty("hypno.heartbeat.intervalMs", "500");
+        defaultProperty("hypno.heartbeat.timeoutMs", "2000");
+        defaultProperty("hypno.log.level", "WARN");
+
+        SoakHarness harness = new SoakHarness(port);
+        harness.run(clientCount, minutes * 60_000);
+        System.exit(0);
+    }
+
+    private static void defaultProperty(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+
+    public void run(int clientCount, long durationMillis) throws Exception {
+        startServer();
+        for (int i = 0; i < clientCount; i++) {
+            Client client = new Client("soak_user_" + i, "ws://127.0.0.1:" + port);
+            clients.add(client);
+            client.manager.start(client.user, "secret", "Spiral 1");
+        }
+        await("initial connect", () -> clients.stream().allMatch(c -> c.authenticated && server.isConnected(c.user)));
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long firstHeap = usedHeapAfterGc(memory);
+        long maxHeap = firstHeap;
+        long start = System.currentTimeMillis();
+        long nextSample = start + 60_000;
+        int round = 0;
+        System.out.printf("Soak: %d clients for %d s, heap after GC at start %.1f MB%n",
+                clientCount, durationMillis / 1000, firstHeap / 1e6);
+
+        while (System.currentTimeMillis() - start < durationMillis) {
+            round++;
+            lockStorm(50);
+            chatFlood(200);
+            textFlood(200);
+            controllerCycle();
+            serverRestart();
+            deadPeer();
+            if (System.currentTimeMillis() >= nextSample) {
+                long heap = usedHeapAfterGc(memory);
+                maxHeap = Math.max(maxHeap, heap);
+                System.out.printf("[%4d s] round %d, heap after GC %.1f MB (%+.1f MB since start)%n",
+                        (System.currentTimeMillis() - start) / 1000, round, heap / 1e6, (heap - firstHeap) / 1e6);
+                nextSample += 60_000;
+            }
+        }
+
+        long lastHeap = usedHeapAfterGc(memory);
+        for (Client client : clients) {
+            client.manager.close();
+        }
+        server.stop(1000);
+
+        System.out.printf("%nRounds: %d, timeouts: %d%n", round, timeouts.get());
+        System.out.println("lock (server -> client):   " + lockLatency.snapshot());
+        System.out.println("unlock (server -> client): " + unlockLatency.snapshot());
+        System.out.println("chat (server -> client):   " + chatLatency.snapshot());
+        System.out.println("text (client -> server):   " + textLatency.snapshot());
+        System.out.println("reconnect after restart:   " + reconnectLatency.snapshot());
+        System.out.println("dead peer detected after:  " + deadPeerDetection.snapshot());
+        System.out.printf("Heap after GC: start %.1f MB, max %.1f MB, end %.1f MB, growth %+.1f MB%n%n",
+                firstHeap / 1e6, Math.max(maxHeap, lastHeap) / 1e6, lastHeap / 1e6, (lastHeap - firstHeap) / 1e6);
+        System.out.print(Metrics.report());
+    }
+
+    private void startServer() throws InterruptedException {
+        server = StandInServer.create(port);
+        server.setFrameListener(this::onServerFrame);
+        server.start();
+        Thread.sleep(200);
+    }
+
+    private void onServerFrame(String user, InboundMessage message) {
+        if (message.command() != Command.TEXT) {
+            return;
+        }
+        for (Client client : clients) {
+            if (client.user.equals(user)) {
+                Long sentAt = client.textSent.poll();
+                if (sentAt != null) {
+                    textLatency.record(System.nanoTime() - sentAt);
+                }
+                return;
+            }
+        }
+    }
+
+    /** Locks and unlocks every client back to back, as fast as the server can send. */
+    private void lockStorm(int cycles) {
+        for (int i = 0; i < cycles; i++) {
+            for (Client client : clients) {
+                client.serverSent.add(System.nanoTime());
+                server.lock(client.user);
+                client.serverSent.add(System.nanoTime());
+                server.unlock(client.user);
+            }
+        }
+        awaitDelivered("lock storm");
+    }
+
+    private void chatFlood(int messages) {
+        for (int i = 0; i < messages; i++) {
+            for (Client client : clients) {
+                client.serverSent.add(System.nanoTime());
+                server.chat(client.user, "You are getting sleepier, message " + i);
+            }
+        }
+        awaitDelivered("chat flood");
+    }
+
+    private void textFlood(int messages) {
+        for (int i = 0; i < messages; i++) {
+            for (Client client : clients) {
+                client.textSent.add(System.nanoTime());
+                client.manager.sendMessage(client.user, "text", "k");
+            }
+        }
+        await("text flood", () -> clients.stream().allMatch(c -> c.textSent.isEmpty()));
+    }
+
+    private void controllerCycle() {
+        for (Client client : clients) {
+            client.listReplies.set(0);
+            client.manager.addController("soak_controller");
+            client.manager.listControllers();
+            client.manager.removeController("soak_controller");
+        }
+        await("controller cycle", () -> clients.stream().allMatch(c -> c.listReplies.get() > 0));
+    }
+
+    /** Kills the server with every client connected, restarts it and waits for all to re-authenticate. */
+    private void serverRestart() throws Exception {
+        for (Client client : clients) {
+            client.authenticated = false;
+        }
+        server.stop(0);
+        long stoppedAt = System.nanoTime();
+        startServer();
+        await("reconnect", () -> clients.stream().allMatch(c -> c.authenticated && server.isConnected(c.user)));
+        for (Client client : clients) {
+            reconnectLatency.record(client.authenticatedAt - stoppedAt);
+        }
+    }
+
+    /** Freezes the server and measures how long each client takes to give up on it. */
+    private void deadPeer() {
+        server.setFrozen(true);
+        long frozenAt = System.nanoTime();
+        await("dead peer detection", () -> clients.stream().noneMatch(c -> c.authenticated));
+        for (Client client : clients) {
+            if (client.closedAt - frozenAt > 0) {
+                deadPeerDetection.record(client.closedAt - frozenAt);
+            }
+        }
+        server.setFrozen(false);
+        await("reconnect after dead peer", () -> clients.stream().allMatch(c -> c.authenticated && server.isConnected(c.user)));
+    }
+
+    private void awaitDelivered(String scenario) {
+        await(scenario, () -> clients.stream().allMatch(c -> c.serverSent.isEmpty()));
+    }
+
+    private void await(String scenario, BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + AWAIT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                timeouts.incrementAndGet();
+                System.out.println("Timed out waiting for " + scenario);
+                for (Client client : clients) {
+                    client.serverSent.clear();
+                    client.textSent.clear();
+                }
+                return;
+            }
+            try {
+                Thread.sleep(2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static long usedHeapAfterGc(MemoryMXBean memory) {
+        System.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    /** One simulated desktop client: a real WebSocketManager with a headless lock screen. */
+    private final class Client implements LockScreen, ConnectionListener {
+        final String user;
+        final WebSocketManager manager;
+        // Send timestamps of frames on their way, in the order they were sent.
+        final Queue<Long> serverSent = new ConcurrentLinkedQueue<>();
+        final Queue<Long> textSent = new ConcurrentLinkedQueue<>();
+        final AtomicInteger listReplies = new AtomicInteger();
+        volatile boolean authenticated;
+        volatile long authenticatedAt;
+        volatile long closedAt;
+
+        Client(String user, String uri) {
+            this.user = user;
+            this.manager = WebSocketManager.create(uri, this, this);
+        }
+
+        private void delivered(LatencyHistogram histogram) {
+            Long sentAt = serverSent.poll();
+            if (sentAt != null) {
+                histogram.record(System.nanoTime() - sentAt);
+            }
+        }
+
+        @Override
+        public void prewarmLockOverlay(String imageName) {
+        }
+
+        @Override
+        public void showLockOverlay(String currentUsername, String imageName, WebSocketManager webSocketManager,
+                                    long receivedNanos) {
+            delivered(lockLatency);
+        }
+
+        @Override
+        public void hideLockOverlay(String currentUsername) {
+            delivered(unlockLatency);
+        }
+
+        @Override
+        public void showMessage(String text) {
+            delivered(chatLatency);
+        }
+
+        @Override
+        public void notifyConnectionOpened(String username) {
+            authenticatedAt = System.nanoTime();
+            authenticated = true;
+        }
+
+        @Override
+        public void notifyConnectionClosed(String reason) {
+            closedAt = System.nanoTime();
+            authenticated = false;
+        }
+
+        @Override
+        public void notifyConnectionFailed(String message) {
+            System.out.println(user + ": connection failed: " + message);
+        }
+
+        @Override
+        public void notifyControllerCommandResult(String command, String result) {
+        }
+
+        @Override
+        public void updateControllerList(List<String> users) {
+            listReplies.incrementAndGet();
+        }
+
+        @Override
+        public void updateControlledUsers(ControlledUsersModel.Update update) {
+        }
+
+        @Override
+        public void notifyLockChanged(String account, boolean locked) {
+        }
+    }
+}
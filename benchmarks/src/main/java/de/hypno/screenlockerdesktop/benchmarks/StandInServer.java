@@ -0,0 +1,301 @@
+package de.hypno.screenlockerdesktop.benchmarks;
+
+import de.hypno.screenlockerdesktop.Command;
+import de.hypno.screenlockerdesktop.InboundMessage;
+import de.hypno.screenlockerdesktop.MessageDecoder;
+import de.hypno.screenlockerdesktop.MessageEncoder;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import org.java_websocket.WebSocket;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.extensions.IExtension;
+import org.java_websocket.extensions.permessage_deflate.PerMessageDeflateExtension;
+import org.java_websocket.exceptions.InvalidDataException;
+import org.java_websocket.framing.CloseFrame;
+import org.java_websocket.framing.Framedata;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.handshake.ServerHandshakeBuilder;
+import org.java_websocket.protocols.IProtocol;
+import org.java_websocket.protocols.Protocol;
+import org.java_websocket.server.WebSocketServer;
+
+/**
+ * A local stand-in for the hypno server, speaking the same JSON protocol over plain
+ * {@code ws://}. Point a client at it with {@code -Dhypno.ws.uri=ws://127.0.0.1:<port>}.
+ * <p>
+ * It authenticates users (any password, unless one was set with {@link #setPassword}),
+ * keeps each user's controllers, answers {@code add_ctrl}, {@code remove_ctrl} and
+ * {@code list_ctrl}, forwards {@code lock}, {@code unlock} and {@code chat} from a
+ * controller to the controlled user, and forwards a user's {@code text} and
+ * {@code unlock} to their controllers. Controllers get a {@code controlled_users_update}
+ * delta whenever one of their users connects, disconnects, locks or unlocks. Tests can
+ * also push frames directly with
+ * {@link #send}, and {@link #setFrozen} simulates a server that vanished without
+ * closing its connections.
+ * <p>
+ * By default it accepts permessage-deflate and the compact {@code hypno.v3} envelope
+ * when a client offers them; either can be turned off to test the client's fallback.
+ */
+public class StandInServer extends WebSocketServer {
+
+    private final Map<String, WebSocket> sessions = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> controllers = new ConcurrentHashMap<>();
+    private final Map<String, String> passwords = new ConcurrentHashMap<>();
+    private final Set<String> locked = ConcurrentHashMap.newKeySet();
+    private final MessageEncoder verboseEncoder = new MessageEncoder();
+    private final MessageEncoder compactEncoder = new MessageEncoder();
+    private volatile BiConsumer<String, InboundMessage> frameListener = (user, message) -> { };
+    private volatile boolean frozen = false;
+
+    public static StandInServer create(int port) {
+        return create(port, true, true);
+    }
+
+    public static StandInServer create(int port, boolean compact, boolean deflate) {
+        StandInServer server = new StandInServer(port, compact, deflate);
+        // Set once the server is built; the setter is overridable, so not from the constructor.
+        server.setReuseAddr(true);
+        return server;
+    }
+
+    private StandInServer(int port, boolean compact, boolean deflate) {
+        super(new InetSocketAddress("127.0.0.1", port), Collections.singletonList(createDraft(compact, deflate)));
+        compactEncoder.setCompact(true);
+    }
+
+    private static Draft createDraft(boolean compact, boolean deflate) {
+        List<IExtension> extensions = deflate
+                ? Collections.singletonList(new PerMessageDeflateExtension())
+                : Collections.emptyList();
+        List<IProtocol> protocols = compact
+                ? List.of(new Protocol(MessageEncoder.COMPACT_PROTOCOL), new Protocol(""))
+                : List.of(new Protocol(""));
+        return new Draft_6455(extensions, protocols);
+    }
+
+    /** Only accepts {@code password} for {@code user} from now on. */
+    public void setPassword(String user, String password) {
+        passwords.put(user, password);
+    }
+
+    /** Called on the server's thread with every frame an authenticated user sends. */
+    public void setFrameListener(BiConsumer<String, InboundMessage> frameListener) {
+        this.frameListener = frameListener;
+    }
+
+    /**
+     * While frozen, open connections stay up but frames and pings go unanswered, and new
+     * handshakes are refused, like a peer behind a dead network path.
+     */
+    public void setFrozen(boolean frozen) {
+        this.frozen = frozen;
+    }
+
+    public boolean isConnected(String user) {
+        WebSocket conn = sessions.get(user);
+        return conn != null && conn.isOpen();
+    }
+
+    /** Pushes a frame to {@code user}; returns false if the user is not connected. */
+    public boolean send(String user, String cmd, Object data) {
+        WebSocket conn = sessions.get(user);
+        if (conn == null || !conn.isOpen()) {
+            return false;
+        }
+        boolean compact = conn.getProtocol() != null
+                && MessageEncoder.COMPACT_PROTOCOL.equals(conn.getProtocol().getProvidedProtocol());
+        MessageEncoder encoder = compact ? compactEncoder : verboseEncoder;
+        String frame;
+        synchronized (encoder) {
+            frame = StandardCharsets.UTF_8.decode(encoder.encode(user, cmd, data)).toString();
+        }
+        conn.send(frame);
+        return true;
+    }
+
+    public boolean lock(String user) {
+        return send(user, "lock", null);
+    }
+
+    public boolean unlock(String user) {
+        return send(user, "unlock", null);
+    }
+
+    public boolean chat(String user, String text) {
+        return send(user, "chat", text);
+    }
+
+    @Override
+    public void onOpen(WebSocket conn, ClientHandshake handshake) {
+    }
+
+    @Override
+    public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+        String user = conn.getAttachment();
+        if (user != null && sessions.remove(user, conn)) {
+            publishStatus(user);
+        }
+    }
+
+    @Override
+    public ServerHandshakeBuilder onWebsocketHandshakeReceivedAsServer(WebSocket conn, Draft draft,
+            ClientHandshake request) throws InvalidDataException {
+        if (frozen) {
+            throw new InvalidDataException(CloseFrame.TRY_AGAIN_LATER, "Server is frozen");
+        }
+        return super.onWebsocketHandshakeReceivedAsServer(conn, draft, request);
+    }
+
+    @Override
+    public void onWebsocketPing(WebSocket conn, Framedata f) {
+        if (!frozen) {
+            super.onWebsocketPing(conn, f);
+        }
+    }
+
+    @Override
+    public void onMessage(WebSocket conn, String frame) {
+        if (frozen) {
+            return;
+        }
+        InboundMessage message;
+        try {
+            message = MessageDecoder.decode(frame);
+        } catch (IllegalArgumentException e) {
+            conn.close(1003, "Malformed frame");
+            return;
+        }
+        String user = conn.getAttachment();
+        if (message.command() == Command.AUTH) {
+            authenticate(conn, message);
+            return;
+        }
+        if (user == null) {
+            conn.close(1008, "Not authenticated");
+            return;
+        }
+        frameListener.accept(user, message);
+
+        String target = message.target();
+        switch (message.command()) {
+            case LOCK:
+            case CHAT:
+                if (controllersOf(target).contains(user)) {
+                    send(target, message.command().wireName(), message.data());
+                    if (message.command() == Command.LOCK && locked.add(target)) {
+                        publishStatus(target);
+                    }
+                }
+                break;
+            case UNLOCK:
+                if (user.equals(target)) {
+                    forwardToControllers(user, message);
+                } else if (controllersOf(target).contains(user)) {
+                    send(target, "unlock", null);
+                } else {
+                    break;
+                }
+                if (locked.remove(target)) {
+                    publishStatus(target);
+                }
+                break;
+            case TEXT:
+                forwardToControllers(user, message);
+                break;
+            case ADD_CTRL:
+                controllersOf(user).add(target);
+                send(user, "add_ctrl", "success");
+                break;
+            case REMOVE_CTRL:
+                send(user, "remove_ctrl", controllersOf(user).remove(target) ? "success" : "not a controller");
+                break;
+            case LIST_CTRL:
+                send(user, "list_ctrl", new RawJson(toJsonArray(controllersOf(user))));
+                break;
+            default:
+                // set_device_type and anything unknown need no answer.
+                break;
+        }
+    }
+
+    private void authenticate(WebSocket conn, InboundMessage message) {
+        String user = message.target();
+        String expected = passwords.get(user);
+        String password = message.data();
+        if (user == null || password == null || password.isEmpty() || (expected != null && !expected.equals(password))) {
+            conn.send("{\"target\":" + quote(user) + ",\"cmd\":\"auth\",\"data\":\"Invalid credentials\",\"apiVersion\":2}");
+            return;
+        }
+        conn.setAttachment(user);
+        WebSocket previous = sessions.put(user, conn);
+        if (previous != null && previous != conn) {
+            previous.close(1000, "Replaced by a new session");
+        }
+        send(user, "auth", "success");
+        publishStatus(user);
+    }
+
+    /** Sends the user's current online and locked state to each of their controllers. */
+    private void publishStatus(String user) {
+        String delta = "{\"user\":" + quote(user) + ",\"online\":" + sessions.containsKey(user)
+                + ",\"locked\":" + locked.contains(user) + "}";
+        for (String controller : controllersOf(user)) {
+            send(controller, "controlled_users_update", new RawJson(delta));
+        }
+    }
+
+    private void forwardToControllers(String user, InboundMessage message) {
+        for (String controller : controllersOf(user)) {
+            send(controller, message.command().wireName(), message.data());
+        }
+    }
+
+    private Set<String> controllersOf(String user) {
+        return controllers.computeIfAbsent(user, key -> ConcurrentHashMap.newKeySet());
+    }
+
+    private static String toJsonArray(Set<String> users) {
+        StringBuilder sb = new StringBuilder("[");
+        for (String user : users) {
+            if (sb.length() > 1) {
+                sb.append(',');
+            }
+            sb.append(quote(user));
+        }
+        return sb.append(']').toString();
+    }
+
+    private static String quote(String value) {
+        return value == null ? "null" : "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    @Override
+    public void onError(WebSocket conn, Exception ex) {
+        System.err.println("StandInServer: " + ex);
+    }
+
+    @Override
+    public void onStart() {
+    }
+
+    /** A value that the encoder writes verbatim, used for the list_ctrl array. */
+    private static final class RawJson {
+        private final String json;
+
+        RawJson(String json) {
+            this.json = json;
+        }
+
+        @Override
+        public String toString() {
+            return json;
+        }
+    }
+}
@@ -1,17 +1,47 @@
 #!/bin/bash
+set -e
 
-# This command now also runs the dependency-plugin, creating the 
+# This command now also runs the dependency-plugin, creating the
 # target/dependencies folder containing all the needed JARs.
 mvn clean install
 
-# This jpackage command now has a complete module path, pointing to both
-# your application's JAR and the folder with all its dependencies.
+MODULE_PATH="target/dependencies:target/screenlockerdesktop-1.0-SNAPSHOT.jar"
+MAIN_MODULE=de.hypno.screenlockerdesktop/de.hypno.screenlockerdesktop.MainApp
+
+# Link a runtime with only the modules the application needs, the application
+# itself included, plus the JDK's base CDS archive for it.
+rm -rf target/runtime target/cds
+jlink --module-path "$MODULE_PATH" \
+  --add-modules de.hypno.screenlockerdesktop,javafx.controls,javafx.fxml,org.java_websocket,jdk.crypto.ec \
+  --generate-cds-archive \
+  --strip-debug --no-header-files --no-man-pages \
+  --output target/runtime
+
+# Training run: start the application once on that runtime and record the classes it
+# loads in a dynamic AppCDS archive. It exits by itself a few seconds after the settings
+# window is shown (or after the first auth with CDS_TRAINING_EXIT=authenticated, if
+# credentials are stored). Needs a display; on a headless machine wrap it in xvfb-run.
+mkdir -p target/cds
+target/runtime/bin/java -XX:ArchiveClassesAtExit=target/cds/screenlocker.jsa \
+  -Dhypno.startup.exitAfter="${CDS_TRAINING_EXIT:-window}" \
+  -m "$MAIN_MODULE" || true
+
+# The archive only matches the runtime it was trained on, so package that runtime as is.
+# jpackage puts --app-content next to the app directory.
+CDS_OPTIONS=()
+if [ -f target/cds/screenlocker.jsa ]; then
+  CDS_OPTIONS=(--app-content target/cds/screenlocker.jsa \
+    --java-options '-XX:SharedArchiveFile=$APPDIR/../screenlocker.jsa')
+else
+  echo "No CDS archive was created; packaging without it."
+fi
+
 jpackage --type app-image \
   --app-version 1.0.0 \
   --dest target/dist \
   --name "Screen Locker" \
-  --module-path "target/dependencies:target/screenlockerdesktop-1.0-SNAPSHOT.jar" \
-  --add-modules de.hypno.screenlockerdesktop,javafx.controls,javafx.fxml,org.java_websocket,jdk.crypto.ec \
-  --module de.hypno.screenlockerdesktop/de.hypno.screenlockerdesktop.MainApp \
+  --runtime-image target/runtime \
+  --module "$MAIN_MODULE" \
+  "${CDS_OPTIONS[@]}" \
   --vendor "Hypno" \
   --icon package/linux/icon.png
@@ -0,0 +1,22 @@
+package de.hypno.screenlockerdesktop;
+
+/**
+ * A way of muting and unmuting the system's master audio output.
+ * <p>
+ * {@link #mute()} remembers whatever is needed to undo it (such as the volume level)
+ * and {@link #unmute()} restores it. Implementations may block, so {@link AudioManager}
+ * only calls them from its own audio thread.
+ */
+public interface AudioBackend {
+
+    /** A short name for log messages. */
+    String name();
+
+    void mute() throws Exception;
+
+    void unmute() throws Exception;
+
+    /** Releases long-lived resources such as open mixer lines. */
+    default void close() {
+    }
+}
@@ -1,117 +1,170 @@
 package de.hypno.screenlockerdesktop;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Manages system audio for muting and unmuting across different platforms.
+ * <p>
+ * The actual work is done by an {@link AudioBackend}. On Linux the default is the
+ * long-lived {@link JavaSoundAudioBackend}, falling back to the {@code amixer} based
+ * {@link ProcessAudioBackend} when Java Sound exposes no usable port; other platforms use
+ * {@link ProcessAudioBackend}. The {@code hypno.audio.backend} system property
+ * ({@code javasound} or {@code process}) overrides the choice.
+ * <p>
+ * {@link #mute()} and {@link #unmute()} never block. They record the requested state
+ * and return a future; a single audio thread applies requests in order. Requests that
+ * pile up while the thread is busy are coalesced into the last requested state, so
+ * mute, unmute, mute collapses into one mute, and mute, unmute into nothing. Child
+ * processes are killed after {@code hypno.audio.timeoutMs} (3000 ms by default).
  */
 public class AudioManager {
 
     private static final String OS_NAME = System.getProperty("os.name").toLowerCase();
-    
-    // Stores the volume level (0-100) for restoration on macOS and Linux.
-    private int lastVolume = -1;
-    
-    // For Windows, the mute command is a toggle. This flag tracks if the app initiated the mute.
-    private boolean appMuted = false;
+    private static final String BACKEND_PROPERTY = System.getProperty("hypno.audio.backend", "auto");
+    private static final long TIMEOUT_MILLIS = Long.getLong("hypno.audio.timeoutMs", 3000);
+    private static final Log LOG = Log.get(AudioManager.class);
+
+    private final ExecutorService audioThread = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "AudioManager");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Chosen lazily on the audio thread, because probing Java Sound mixers can be slow.
+    private AudioBackend backend;
+
+    // Guarded by "this". The audio thread moves appliedMuted towards desiredMuted.
+    private boolean desiredMuted = false;
+    private boolean appliedMuted = false;
+    private boolean drainScheduled = false;
+    private final List<CompletableFuture<Duration>> waiting = new ArrayList<>();
+
+    private volatile long lastMuteNanos = -1;
+    private volatile long lastUnmuteNanos = -1;
 
     /**
-     * Mutes the system's master audio output.
-     * On Linux and macOS, it stores the current volume before muting.
-     * On Windows, it toggles the system mute state.
+     * Mutes the system's master audio output, remembering what is needed to restore it.
+     *
+     * @return completes with the time the backend took, or {@link Duration#ZERO} if the
+     *         request was coalesced away
      */
-    public void mute() {
-        try {
-            if (OS_NAME.contains("win")) {
-                // Windows: This uses PowerShell to simulate pressing the 'Mute' media key.
-                // NOTE: This is a TOGGLE and may not be reliable on all systems. A more
-                // robust solution would require external libraries like JNA.
-                executeCommand("powershell", "-c", "(New-Object -ComObject WScript.Shell).SendKeys([char]173)");
-                appMuted = true;
-
-            } else if (OS_NAME.contains("mac")) {
-                // macOS: Use osascript to get the current volume, then mute.
-                String getVolumeScript = "output volume of (get volume settings)";
-                String volumeStr = executeCommandAndGetOutput("osascript", "-e", getVolumeScript);
-                if (volumeStr != null && !volumeStr.trim().isEmpty()) {
-                    lastVolume = Integer.parseInt(volumeStr.trim());
-                }
-                executeCommand("osascript", "-e", "set volume with output muted");
-
-            } else if (OS_NAME.contains("nix") || OS_NAME.contains("nux")) {
-                // Linux: Use amixer to get the current volume from the Master channel.
-                String output = executeCommandAndGetOutput("amixer", "sget", "Master");
-                if (output != null) {
-                    // Regex to find a volume percentage like "[80%]"
-                    Pattern pattern = Pattern.compile("\\[(\\d+)%\\]");
-                    Matcher matcher = pattern.matcher(output);
-                    if (matcher.find()) {
-                        lastVolume = Integer.parseInt(matcher.group(1));
-                    }
-                }
-                // Mute the Master channel.
-                executeCommand("amixer", "-q", "sset", "Master", "mute");
-            }
-        } catch (IOException | InterruptedException e) {
-            System.err.println("Error muting audio: " + e.getMessage());
-            appMuted = false; // Ensure state is correct on failure.
-        }
+    public CompletableFuture<Duration> mute() {
+        return request(true);
     }
 
     /**
-     * Unmutes the system's master audio output.
-     * On Linux and macOS, it restores the previously stored volume level.
-     * On Windows, it toggles the mute state back if the app was the one to mute it.
+     * Unmutes the system's master audio output and restores the previous state.
+     *
+     * @return completes with the time the backend took, or {@link Duration#ZERO} if the
+     *         request was coalesced away
      */
-    public void unmute() {
-        try {
-            if (OS_NAME.contains("win")) {
-                // Windows: Only toggle mute back if we were the one who initiated it.
-                if (appMuted) {
-                    executeCommand("powershell", "-c", "(New-Object -ComObject WScript.Shell).SendKeys([char]173)");
+    public CompletableFuture<Duration> unmute() {
+        return request(false);
+    }
+
+    /** Duration of the last mute the backend performed, in nanoseconds, or -1. */
+    public long getLastMuteNanos() {
+        return lastMuteNanos;
+    }
+
+    /** Duration of the last unmute the backend performed, in nanoseconds, or -1. */
+    public long getLastUnmuteNanos() {
+        return lastUnmuteNanos;
+    }
+
+    private synchronized CompletableFuture<Duration> request(boolean muted) {
+        CompletableFuture<Duration> future = new CompletableFuture<>();
+        desiredMuted = muted;
+        waiting.add(future);
+        if (!drainScheduled) {
+            drainScheduled = true;
+            audioThread.execute(this::drain);
+        }
+        return future;
+    }
+
+    /** Runs on the audio thread until the applied state matches the requested one. */
+    private void drain() {
+        while (true) {
+            boolean target;
+            List<CompletableFuture<Duration>> batch;
+            synchronized (this) {
+                batch = new ArrayList<>(waiting);
+                waiting.clear();
+                if (desiredMuted == appliedMuted) {
+                    drainScheduled = false;
+                    batch.forEach(future -> future.complete(Duration.ZERO));
+                    return;
                 }
-            } else if (OS_NAME.contains("mac")) {
-                // macOS: First, unmute the audio.
-                executeCommand("osascript", "-e", "set volume without output muted");
-                // Then, restore the volume level if we have a saved state.
-                if (lastVolume != -1) {
-                     executeCommand("osascript", "-e", "set volume output volume " + lastVolume);
+                target = desiredMuted;
+            }
+
+            long start = System.nanoTime();
+            Exception failure = null;
+            try {
+                if (target) {
+                    backend().mute();
+                } else {
+                    backend().unmute();
+                }
+            } catch (Exception e) {
+                failure = e;
+            }
+            long elapsed = System.nanoTime() - start;
+
+            synchronized (this) {
+                // A failed mute leaves nothing to undo; a failed unmute is not retried.
+                appliedMuted = target && failure == null;
+            }
+            if (target) {
+                lastMuteNanos = elapsed;
+            } else {
+                lastUnmuteNanos = elapsed;
+            }
+            if (failure == null) {
+                (target ? Metrics.MUTE : Metrics.UNMUTE).record(elapsed);
+            }
+
+            if (failure != null) {
+                LOG.warn("Error {} audio: {}", target ? "muting" : "unmuting", failure.getMessage());
+                for (CompletableFuture<Duration> future : batch) {
+                    future.completeExceptionally(failure);
                 }
-            } else if (OS_NAME.contains("nix") || OS_NAME.contains("nux")) {
-                // Linux: First, unmute the Master channel.
-                executeCommand("amixer", "-q", "sset", "Master", "unmute");
-                // Then, restore the volume level if we have one saved.
-                 if (lastVolume != -1) {
-                     executeCommand("amixer", "-q", "sset", "Master", lastVolume + "%");
+            } else {
+                LOG.info("{} took {} ms ({} request(s))", target ? "mute" : "unmute", elapsed / 1_000_000, batch.size());
+                Duration duration = Duration.ofNanos(elapsed);
+                for (CompletableFuture<Duration> future : batch) {
+                    future.complete(duration);
                 }
             }
-        } catch (IOException | InterruptedException e) {
-            System.err.println("Error unmuting audio: " + e.getMessage());
-        } finally {
-            // Reset state regardless of success or failure.
-            appMuted = false;
-            lastVolume = -1;
         }
     }
 
-    private void executeCommand(String... command) throws IOException, InterruptedException {
-        new ProcessBuilder(command).start().waitFor();
+    private AudioBackend backend() {
+        if (backend == null) {
+            backend = createBackend();
+            LOG.info("Using {} audio backend.", backend.name());
+        }
+        return backend;
     }
 
-    private String executeCommandAndGetOutput(String... command) throws IOException, InterruptedException {
-        Process process = new ProcessBuilder(command).start();
-        StringBuilder output = new StringBuilder();
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                output.append(line);
+    private static AudioBackend createBackend() {
+        boolean linux = OS_NAME.contains("nix") || OS_NAME.contains("nux");
+        if ("javasound".equals(BACKEND_PROPERTY) || ("auto".equals(BACKEND_PROPERTY) && linux)) {
+            try {
+                AudioBackend javaSound = JavaSoundAudioBackend.open();
+                if (javaSound != null) {
+                    return javaSound;
+                }
+            } catch (RuntimeException e) {
+                LOG.warn("Java Sound audio backend unavailable: {}", e.getMessage());
             }
         }
-        process.waitFor();
-        return output.toString();
+        return new ProcessAudioBackend(TIMEOUT_MILLIS);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,149 @@
+package de.hypno.screenlockerdesktop;
+
+import java.util.ArrayDeque;
+import java.util.function.Consumer;
+import javafx.animation.PauseTransition;
+import javafx.util.Duration;
+
+/**
+ * Decides which chat message the lock overlay shows and for how long. FX thread only.
+ * <p>
+ * Messages are shown one after another from a bounded queue ({@code hypno.chat.queueCapacity},
+ * 20 by default). Each stays up at least its minimum time, which grows with its length
+ * from {@code hypno.chat.minDisplayMs} (3000 ms by default) by 50 ms per character, and
+ * at most {@code hypno.chat.maxDisplayMs} (10000 ms by default). Once the minimum has
+ * passed, the next queued message replaces it, or a key press dismisses it; without
+ * either it disappears at its maximum. That also limits the rate: however fast messages
+ * arrive, each one gets its minimum time on screen.
+ * <p>
+ * A message equal to one already waiting, or to the one on screen, is merged into it
+ * and shown with a count. When the queue is full, the oldest waiting message is
+ * dropped, so a flood costs neither memory nor animations and still ends with the
+ * latest messages. A single timer drives all of it.
+ */
+public class ChatScheduler {
+
+    private static final int CAPACITY = Integer.getInteger("hypno.chat.queueCapacity", 20);
+    private static final long MIN_DISPLAY_MILLIS = Long.getLong("hypno.chat.minDisplayMs", 3000);
+    private static final long MAX_DISPLAY_MILLIS = Long.getLong("hypno.chat.maxDisplayMs", 10000);
+    private static final long MILLIS_PER_CHAR = 50;
+
+    private static final class Message {
+        final String text;
+        final long minMillis;
+        int count = 1;
+
+        Message(String text, long minMillis) {
+            this.text = text;
+            this.minMillis = minMillis;
+        }
+
+        String display() {
+            return count == 1 ? text : text + " (\u00d7" + count + ")";
+        }
+    }
+
+    private final Consumer<String> show;
+    private final Runnable hide;
+    private final int capacity;
+    private final long minDisplayMillis;
+    private final long maxDisplayMillis;
+
+    private final ArrayDeque<Message> queue = new ArrayDeque<>();
+    private final PauseTransition timer = new PauseTransition();
+    private Message current;
+    // Set once the current message has been up for its minimum time.
+    private boolean dismissible = false;
+
+    /**
+     * @param show shows the given text, replacing any message on screen
+     * @param hide takes the message off the screen
+     */
+    public ChatScheduler(Consumer<String> show, Runnable hide) {
+        this(show, hide, CAPACITY, MIN_DISPLAY_MILLIS, MAX_DISPLAY_MILLIS);
+    }
+
+    public ChatScheduler(Consumer<String> show, Runnable hide, int capacity, long minDisplayMillis, long maxDisplayMillis) {
+        this.show = show;
+        this.hide = hide;
+        this.capacity = capacity;
+        this.minDisplayMillis = minDisplayMillis;
+        this.maxDisplayMillis = maxDisplayMillis;
+        timer.setOnFinished(e -> onTimer());
+    }
+
+    public void offer(String text) {
+        if (current != null && current.text.equals(text)) {
+            current.count++;
+            show.accept(current.display());
+            return;
+        }
+        for (Message waiting : queue) {
+            if (waiting.text.equals(text)) {
+                waiting.count++;
+                return;
+            }
+        }
+        if (queue.size() >= capacity) {
+            queue.pollFirst();
+            Metrics.chatDropped();
+        }
+        long minMillis = Math.min(maxDisplayMillis, minDisplayMillis + MILLIS_PER_CHAR * text.length());
+        queue.addLast(new Message(text, minMillis));
+        if (current == null) {
+            showNext();
+        } else if (dismissible) {
+            // The current message already had its time; make way right away.
+            showNext();
+        }
+    }
+
+    /** A key was pressed on the overlay: dismisses the message once it has had its minimum time. */
+    public void onKeyPressed() {
+        if (current != null && dismissible) {
+            showNext();
+        }
+    }
+
+    /** Hides the message and forgets the queue, e.g. when the overlay closes. */
+    public void clear() {
+        timer.stop();
+        queue.clear();
+        if (current != null) {
+            current = null;
+            hide.run();
+        }
+        dismissible = false;
+    }
+
+    private void showNext() {
+        current = queue.pollFirst();
+        dismissible = false;
+        if (current == null) {
+            timer.stop();
+            hide.run();
+            return;
+        }
+        show.accept(current.display());
+        restartTimer(current.minMillis);
+    }
+
+    private void onTimer() {
+        if (current == null) {
+            return;
+        }
+        if (dismissible || !queue.isEmpty()) {
+            // Past the maximum, or the next message has waited for this one's minimum.
+            showNext();
+            return;
+        }
+        dismissible = true;
+        restartTimer(maxDisplayMillis - current.minMillis);
+    }
+
+    private void restartTimer(long millis) {
+        timer.stop();
+        timer.setDuration(Duration.millis(Math.max(1, millis)));
+        timer.playFromStart();
+    }
+}
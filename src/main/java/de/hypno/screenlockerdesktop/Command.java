@@ -0,0 +1,70 @@
+package de.hypno.screenlockerdesktop;
+
+/**
+ * The commands of the hypno WebSocket protocol, keyed by their wire name and by the
+ * short code used in the compact apiVersion 3 envelope.
+ */
+public enum Command {
+    AUTH("auth", "a"),
+    LOCK("lock", "l"),
+    UNLOCK("unlock", "u"),
+    CHAT("chat", "c"),
+    TEXT("text", "t"),
+    CONTROLLED_USERS_UPDATE("controlled_users_update", "cu"),
+    ADD_CTRL("add_ctrl", "ac"),
+    REMOVE_CTRL("remove_ctrl", "rc"),
+    LIST_CTRL("list_ctrl", "lc"),
+    SET_DEVICE_TYPE("set_device_type", "dt"),
+    UNKNOWN("", "");
+
+    // Cached copy of values(), which would otherwise clone the array on every lookup.
+    private static final Command[] COMMANDS = values();
+
+    private final String wireName;
+    private final String shortCode;
+
+    Command(String wireName, String shortCode) {
+        this.wireName = wireName;
+        this.shortCode = shortCode;
+    }
+
+    public String wireName() {
+        return wireName;
+    }
+
+    /** The name used in the compact envelope. */
+    public String shortCode() {
+        return shortCode;
+    }
+
+    /**
+     * Finds the command whose wire name or short code equals {@code source[start, end)}
+     * without allocating a substring. Returns {@link #UNKNOWN} if nothing matches.
+     */
+    public static Command lookup(CharSequence source, int start, int end) {
+        for (Command command : COMMANDS) {
+            if (command != UNKNOWN && (matches(source, start, end, command.wireName)
+                    || matches(source, start, end, command.shortCode))) {
+                return command;
+            }
+        }
+        return UNKNOWN;
+    }
+
+    private static boolean matches(CharSequence source, int start, int end, String name) {
+        int length = end - start;
+        if (name.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (source.charAt(start + i) != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static Command lookup(String name) {
+        return name == null ? UNKNOWN : lookup(name, 0, name.length());
+    }
+}
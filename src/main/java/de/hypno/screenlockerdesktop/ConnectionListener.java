@@ -0,0 +1,32 @@
+package de.hypno.screenlockerdesktop;
+
+import java.util.List;
+
+/**
+ * Receives connection and controller-management events from {@link WebSocketManager}.
+ * Called on the WebSocket threads; implementations hop to their own thread if needed.
+ */
+public interface ConnectionListener {
+
+    void notifyConnectionOpened(String username);
+
+    void notifyConnectionClosed(String reason);
+
+    void notifyConnectionFailed(String message);
+
+    /** Result of an add or remove request; {@code command} is "add" or "remove". */
+    void notifyControllerCommandResult(String command, String result);
+
+    /**
+     * The names in a {@code list_ctrl} reply, see
+     * {@link SettingsController#parseControllerList(String)}, or {@code null} if the
+     * reply could not be parsed.
+     */
+    void updateControllerList(List<String> users);
+
+    /** A {@code controlled_users_update}, already parsed with {@link ControlledUsersModel#parse(String)}. */
+    void updateControlledUsers(ControlledUsersModel.Update update);
+
+    /** The session of {@code account} was locked or unlocked by a controller. */
+    void notifyLockChanged(String account, boolean locked);
+}
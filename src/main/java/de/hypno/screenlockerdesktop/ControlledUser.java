@@ -0,0 +1,53 @@
+package de.hypno.screenlockerdesktop;
+
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.SimpleBooleanProperty;
+
+/**
+ * One user this account controls, as shown on the dashboard. The state lives in
+ * properties, so a changed user only redraws its own row.
+ */
+public final class ControlledUser {
+
+    private final String name;
+    private final BooleanProperty online = new SimpleBooleanProperty(this, "online");
+    private final BooleanProperty locked = new SimpleBooleanProperty(this, "locked");
+
+    public ControlledUser(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isOnline() {
+        return online.get();
+    }
+
+    public ReadOnlyBooleanProperty onlineProperty() {
+        return online;
+    }
+
+    public boolean isLocked() {
+        return locked.get();
+    }
+
+    public ReadOnlyBooleanProperty lockedProperty() {
+        return locked;
+    }
+
+    void setOnline(boolean online) {
+        this.online.set(online);
+    }
+
+    void setLocked(boolean locked) {
+        this.locked.set(locked);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,68 @@
+package de.hypno.screenlockerdesktop;
+
+import javafx.beans.InvalidationListener;
+import javafx.geometry.Pos;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.Region;
+
+/**
+ * Dashboard row for one {@link ControlledUser}. The cell listens to the properties of
+ * the user it shows, so a status change redraws this row only, and it moves its
+ * listeners along when the list view reuses it for another user.
+ */
+class ControlledUserCell extends ListCell<ControlledUser> {
+
+    private final Label nameLabel = new Label();
+    private final Label stateLabel = new Label();
+    private final HBox row = new HBox(10, nameLabel, new Region(), stateLabel);
+    private final InvalidationListener stateListener = observable -> updateState();
+    private ControlledUser shown;
+
+    ControlledUserCell() {
+        HBox.setHgrow(row.getChildren().get(1), Priority.ALWAYS);
+        row.setAlignment(Pos.CENTER_LEFT);
+    }
+
+    @Override
+    protected void updateItem(ControlledUser user, boolean empty) {
+        super.updateItem(user, empty);
+        ControlledUser next = empty ? null : user;
+        if (next != shown) {
+            if (shown != null) {
+                shown.onlineProperty().removeListener(stateListener);
+                shown.lockedProperty().removeListener(stateListener);
+            }
+            if (next != null) {
+                next.onlineProperty().addListener(stateListener);
+                next.lockedProperty().addListener(stateListener);
+            }
+            shown = next;
+        }
+        if (next == null) {
+            setGraphic(null);
+            return;
+        }
+        nameLabel.setText(next.getName());
+        updateState();
+        setGraphic(row);
+    }
+
+    private void updateState() {
+        if (shown == null) {
+            return;
+        }
+        if (!shown.isOnline()) {
+            stateLabel.setText("offline");
+            stateLabel.setStyle("-fx-text-fill: gray;");
+        } else if (shown.isLocked()) {
+            stateLabel.setText("online, locked");
+            stateLabel.setStyle("-fx-text-fill: red;");
+        } else {
+            stateLabel.setText("online");
+            stateLabel.setStyle("-fx-text-fill: green;");
+        }
+    }
+}
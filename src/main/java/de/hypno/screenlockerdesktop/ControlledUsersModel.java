@@ -0,0 +1,241 @@
+package de.hypno.screenlockerdesktop;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javafx.beans.property.ReadOnlyIntegerProperty;
+import javafx.beans.property.ReadOnlyIntegerWrapper;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+/**
+ * Indexed model behind the controlled-users dashboard.
+ * <p>
+ * A {@code controlled_users_update} carries either one entry or an array of entries
+ * {@code {"user": name, "online": bool, "locked": bool, "op": "remove"}}; missing
+ * or {@code null} fields are left unchanged and any {@code op} other than {@code remove} adds or updates.
+ * The form {@code {"full": true, "users": [...]}} is a snapshot: users it does not
+ * list are removed.
+ * <p>
+ * Deltas are parsed on any thread with {@link #parse(String)} and applied on the FX
+ * thread with {@link #apply(List)}. A name-to-user index makes each update O(1); an
+ * update only flips the user's properties, so only that row redraws, and all adds and
+ * removes of one batch reach the list as a single change. The online and locked totals
+ * are adjusted per delta rather than recounted.
+ */
+public final class ControlledUsersModel {
+
+    /** One parsed change; {@code null} fields are left as they are. */
+    public static final class Delta {
+        final String user;
+        final boolean remove;
+        final Boolean online;
+        final Boolean locked;
+
+        Delta(String user, boolean remove, Boolean online, Boolean locked) {
+            this.user = user;
+            this.remove = remove;
+            this.online = online;
+            this.locked = locked;
+        }
+    }
+
+    /** A parsed update: the deltas and whether they replace the whole list. */
+    public static final class Update {
+        final boolean snapshot;
+        final List<Delta> deltas;
+
+        Update(boolean snapshot, List<Delta> deltas) {
+            this.snapshot = snapshot;
+            this.deltas = deltas;
+        }
+
+        public int size() {
+            return deltas.size();
+        }
+    }
+
+    private final ObservableList<ControlledUser> users = FXCollections.observableArrayList();
+    private final ObservableList<ControlledUser> readOnlyUsers = FXCollections.unmodifiableObservableList(users);
+    private final Map<String, ControlledUser> index = new HashMap<>();
+    // Running totals behind the count properties, kept up to date per delta.
+    private int online = 0;
+    private int locked = 0;
+    private final ReadOnlyIntegerWrapper onlineCount = new ReadOnlyIntegerWrapper(this, "onlineCount");
+    private final ReadOnlyIntegerWrapper lockedCount = new ReadOnlyIntegerWrapper(this, "lockedCount");
+
+    public ObservableList<ControlledUser> getUsers() {
+        return readOnlyUsers;
+    }
+
+    public ControlledUser get(String name) {
+        return index.get(name);
+    }
+
+    public ReadOnlyIntegerProperty onlineCountProperty() {
+        return onlineCount.getReadOnlyProperty();
+    }
+
+    public ReadOnlyIntegerProperty lockedCountProperty() {
+        return lockedCount.getReadOnlyProperty();
+    }
+
+    /**
+     * Parses the {@code data} of a {@code controlled_users_update}.
+     *
+     * @throws IllegalArgumentException if it is not valid JSON in the format above
+     */
+    public static Update parse(String json) {
+        if (json == null) {
+            return new Update(false, List.of());
+        }
+        JsonReader reader = new JsonReader(json);
+        List<Delta> deltas = new ArrayList<>();
+        if (reader.peek() == JsonReader.Token.BEGIN_ARRAY) {
+            readEntries(reader, deltas);
+            return new Update(false, deltas);
+        }
+        // Either a single entry or a snapshot object; tell them apart by their fields.
+        reader.beginObject();
+        boolean snapshot = false;
+        String user = null;
+        boolean remove = false;
+        Boolean online = null;
+        Boolean locked = null;
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            switch (name) {
+                case "full": snapshot = reader.nextBoolean(); break;
+                case "users": readEntries(reader, deltas); break;
+                case "user": user = reader.nextString(); break;
+                case "op": remove = "remove".equals(reader.nextString()); break;
+                case "online": online = nextFlag(reader); break;
+                case "locked": locked = nextFlag(reader); break;
+                default: reader.skipValue(); break;
+            }
+        }
+        reader.endObject();
+        if (user != null) {
+            deltas.add(new Delta(user, remove, online, locked));
+        }
+        return new Update(snapshot, deltas);
+    }
+
+    private static void readEntries(JsonReader reader, List<Delta> deltas) {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (reader.peek() == JsonReader.Token.STRING) {
+                // A bare name, as in list_ctrl.
+                deltas.add(new Delta(reader.nextString(), false, null, null));
+                continue;
+            }
+            reader.beginObject();
+            String user = null;
+            boolean remove = false;
+            Boolean online = null;
+            Boolean locked = null;
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "user": user = reader.nextString(); break;
+                    case "op": remove = "remove".equals(reader.nextString()); break;
+                    case "online": online = nextFlag(reader); break;
+                    case "locked": locked = nextFlag(reader); break;
+                    default: reader.skipValue(); break;
+                }
+            }
+            reader.endObject();
+            if (user != null) {
+                deltas.add(new Delta(user, remove, online, locked));
+            }
+        }
+        reader.endArray();
+    }
+
+    /** Reads a boolean field; {@code null} leaves it unchanged, like a missing field. */
+    private static Boolean nextFlag(JsonReader reader) {
+        if (reader.peek() == JsonReader.Token.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextBoolean();
+    }
+
+    /** Applies a parsed update. Must run on the FX thread. */
+    public void apply(Update update) {
+        Set<ControlledUser> added = new LinkedHashSet<>();
+        Set<ControlledUser> removed = new HashSet<>();
+        Set<String> listed = update.snapshot ? new HashSet<>() : null;
+
+        for (Delta delta : update.deltas) {
+            ControlledUser user = index.get(delta.user);
+            if (delta.remove) {
+                if (user != null) {
+                    index.remove(delta.user);
+                    // A user created earlier in this update never reached the list.
+                    if (!added.remove(user)) {
+                        removed.add(user);
+                    }
+                    count(user, -1);
+                }
+                continue;
+            }
+            if (listed != null) {
+                listed.add(delta.user);
+            }
+            if (user == null) {
+                user = new ControlledUser(delta.user);
+                index.put(delta.user, user);
+                added.add(user);
+            } else {
+                count(user, -1);
+            }
+            if (delta.online != null) {
+                user.setOnline(delta.online);
+            }
+            if (delta.locked != null) {
+                user.setLocked(delta.locked);
+            }
+            count(user, 1);
+        }
+        if (listed != null) {
+            index.values().removeIf(user -> {
+                boolean stale = !listed.contains(user.getName());
+                if (stale) {
+                    removed.add(user);
+                    count(user, -1);
+                }
+                return stale;
+            });
+        }
+        if (!removed.isEmpty()) {
+            users.removeAll(removed);
+        }
+        if (!added.isEmpty()) {
+            users.addAll(added);
+        }
+        onlineCount.set(online);
+        lockedCount.set(locked);
+    }
+
+    public void clear() {
+        index.clear();
+        users.clear();
+        online = 0;
+        locked = 0;
+        onlineCount.set(0);
+        lockedCount.set(0);
+    }
+
+    private void count(ControlledUser user, int sign) {
+        if (user.isOnline()) {
+            online += sign;
+        }
+        if (user.isLocked()) {
+            locked += sign;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package de.hypno.screenlockerdesktop;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Stands in for the settings UI while the connection starts before the UI exists.
+ * Events are kept in order until {@link #attach} hands them to the real listener;
+ * after that every event goes straight through.
+ */
+public class DeferredConnectionListener implements ConnectionListener {
+
+    // Guarded by "this"; null once attached.
+    private List<Consumer<ConnectionListener>> pending = new ArrayList<>();
+    private volatile ConnectionListener target;
+
+    /** Replays what happened so far to {@code listener} and forwards everything after. */
+    public void attach(ConnectionListener listener) {
+        synchronized (this) {
+            // Replay under the lock, so an event arriving meanwhile cannot overtake them.
+            for (Consumer<ConnectionListener> event : pending) {
+                event.accept(listener);
+            }
+            pending = null;
+            target = listener;
+        }
+    }
+
+    private void dispatch(Consumer<ConnectionListener> event) {
+        ConnectionListener listener = target;
+        if (listener == null) {
+            synchronized (this) {
+                if (pending != null) {
+                    pending.add(event);
+                    return;
+                }
+                listener = target;
+            }
+        }
+        event.accept(listener);
+    }
+
+    @Override
+    public void notifyConnectionOpened(String username) {
+        dispatch(listener -> listener.notifyConnectionOpened(username));
+    }
+
+    @Override
+    public void notifyConnectionClosed(String reason) {
+        dispatch(listener -> listener.notifyConnectionClosed(reason));
+    }
+
+    @Override
+    public void notifyConnectionFailed(String message) {
+        dispatch(listener -> listener.notifyConnectionFailed(message));
+    }
+
+    @Override
+    public void notifyControllerCommandResult(String command, String result) {
+        dispatch(listener -> listener.notifyControllerCommandResult(command, result));
+    }
+
+    @Override
+    public void updateControllerList(List<String> users) {
+        dispatch(listener -> listener.updateControllerList(users));
+    }
+
+    @Override
+    public void updateControlledUsers(ControlledUsersModel.Update update) {
+        dispatch(listener -> listener.updateControlledUsers(update));
+    }
+
+    @Override
+    public void notifyLockChanged(String account, boolean locked) {
+        dispatch(listener -> listener.notifyLockChanged(account, locked));
+    }
+}
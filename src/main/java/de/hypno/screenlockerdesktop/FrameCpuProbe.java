@@ -0,0 +1,97 @@
+package de.hypno.screenlockerdesktop;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.scene.Scene;
+import javafx.util.Duration;
+
+/**
+ * Measures how much CPU the process spends per overlay frame.
+ * <p>
+ * Enabled with {@code -Dhypno.overlay.cpuProbe=true}. Every pulse of the overlay scene is
+ * counted as a frame, and once per period the CPU time of all JVM threads (which
+ * includes the render thread that scales GIF frames) is divided by the number of
+ * frames and logged together with the renderer name, the average frame interval and
+ * the heap in use. The renderer name includes the overlay's stage mode
+ * ({@code hypno.overlay.stages}), so running once per mode compares the two; memory
+ * the GPU or compositor holds for the windows is not visible here. Must be used on the
+ * FX thread.
+ */
+public class FrameCpuProbe {
+
+    public static final boolean ENABLED = Boolean.getBoolean("hypno.overlay.cpuProbe");
+
+    private static final Duration REPORT_PERIOD = Duration.seconds(5);
+    private static final Log LOG = Log.get(FrameCpuProbe.class);
+
+    private final String rendererName;
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final Runnable frameCounter = this::countFrame;
+    private final Timeline reporter = new Timeline(new KeyFrame(REPORT_PERIOD, e -> report()));
+
+    private Scene scene;
+    private long frames;
+    private long periodStartCpu;
+    private long periodStartNanos;
+
+    public FrameCpuProbe(String rendererName) {
+        this.rendererName = rendererName;
+        reporter.setCycleCount(Timeline.INDEFINITE);
+    }
+
+    public void start(Scene scene) {
+        if (!threads.isThreadCpuTimeSupported()) {
+            LOG.warn("Thread CPU time is not supported on this JVM.");
+            return;
+        }
+        threads.setThreadCpuTimeEnabled(true);
+        this.scene = scene;
+        scene.addPostLayoutPulseListener(frameCounter);
+        frames = 0;
+        periodStartCpu = totalCpuNanos();
+        periodStartNanos = System.nanoTime();
+        reporter.play();
+    }
+
+    public void stop() {
+        reporter.stop();
+        if (scene != null) {
+            scene.removePostLayoutPulseListener(frameCounter);
+            scene = null;
+        }
+    }
+
+    private void countFrame() {
+        frames++;
+    }
+
+    private void report() {
+        long cpu = totalCpuNanos();
+        long now = System.nanoTime();
+        long cpuDelta = cpu - periodStartCpu;
+        double seconds = (now - periodStartNanos) / 1_000_000_000.0;
+        if (frames > 0) {
+            LOG.info(String.format("[%s] %d frames in %.1f s, %.1f ms per frame, %.2f ms CPU per frame, %.0f%% of one core, %d MiB heap",
+                    rendererName, frames, seconds, seconds * 1000 / frames, cpuDelta / 1_000_000.0 / frames,
+                    cpuDelta / 1e7 / seconds, memory.getHeapMemoryUsage().getUsed() >> 20));
+        }
+        frames = 0;
+        periodStartCpu = cpu;
+        periodStartNanos = now;
+    }
+
+    private long totalCpuNanos() {
+        long total = 0;
+        for (long id : threads.getAllThreadIds()) {
+            long time = threads.getThreadCpuTime(id);
+            if (time > 0) {
+                total += time;
+            }
+        }
+        return total;
+    }
+}
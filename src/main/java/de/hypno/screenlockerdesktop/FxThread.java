@@ -0,0 +1,22 @@
+package de.hypno.screenlockerdesktop;
+
+import javafx.application.Platform;
+
+/** Runs UI code on the FX thread without queuing another task when already on it. */
+public final class FxThread {
+
+    private FxThread() {
+    }
+
+    /**
+     * Runs {@code task} right away on the FX thread, e.g. inside a {@link UiBatch}, and
+     * with {@link Platform#runLater} from anywhere else.
+     */
+    public static void run(Runnable task) {
+        if (Platform.isFxApplicationThread()) {
+            task.run();
+        } else {
+            Platform.runLater(task);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package de.hypno.screenlockerdesktop;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Application-level liveness check on top of WebSocket ping/pong.
+ * <p>
+ * Every {@code hypno.heartbeat.intervalMs} (5000 ms by default) it sends a ping unless
+ * one is still unanswered. Any pong or inbound message counts as a sign of life. If
+ * nothing has been heard for {@code hypno.heartbeat.timeoutMs} (15000 ms by default) the
+ * peer is declared dead, so a dead connection is noticed within timeout plus one
+ * interval instead of whenever the OS gives up on the socket. The deadline starts when
+ * the connection attempt starts, so a handshake that never completes is caught too.
+ * An interval of 0 disables the heartbeat.
+ */
+public class Heartbeat {
+
+    private static final long INTERVAL_MILLIS = Long.getLong("hypno.heartbeat.intervalMs", 5000);
+    private static final long TIMEOUT_MILLIS = Long.getLong("hypno.heartbeat.timeoutMs", 15000);
+
+    private final BooleanSupplier sendPing;
+    private final Runnable onDead;
+    private final long intervalMillis;
+    private final long timeoutNanos;
+
+    private volatile long lastHeardNanos;
+    private volatile long pingSentNanos = -1;
+    private volatile long lastRttNanos = -1;
+    private ScheduledFuture<?> task;
+
+    /**
+     * @param sendPing sends a ping and returns whether it went out, i.e. the
+     *                 connection was open
+     * @param onDead   runs once on the scheduler thread when the deadline is missed
+     */
+    public Heartbeat(BooleanSupplier sendPing, Runnable onDead) {
+        this(sendPing, onDead, INTERVAL_MILLIS, TIMEOUT_MILLIS);
+    }
+
+    public Heartbeat(BooleanSupplier sendPing, Runnable onDead, long intervalMillis, long timeoutMillis) {
+        this.sendPing = sendPing;
+        this.onDead = onDead;
+        this.intervalMillis = intervalMillis;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+
+    /** Starts (or restarts) watching a new connection attempt. */
+    public synchronized void start() {
+        stop();
+        if (intervalMillis <= 0) {
+            return;
+        }
+        lastHeardNanos = System.nanoTime();
+        pingSentNanos = -1;
+        task = ReconnectScheduler.executor().scheduleAtFixedRate(this::tick, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return intervalMillis > 0;
+    }
+
+    /** Records a pong and the round trip of the ping it answers. */
+    public void onPong() {
+        long now = System.nanoTime();
+        long sentAt = pingSentNanos;
+        if (sentAt >= 0) {
+            lastRttNanos = now - sentAt;
+            Metrics.HEARTBEAT_RTT.record(lastRttNanos);
+            pingSentNanos = -1;
+        }
+        lastHeardNanos = now;
+    }
+
+    /** Records any other inbound traffic, which proves the peer is alive just as well. */
+    public void onTraffic() {
+        lastHeardNanos = System.nanoTime();
+    }
+
+    /** Round trip of the last answered ping in nanoseconds, or -1. */
+    public long getLastRttNanos() {
+        return lastRttNanos;
+    }
+
+    private void tick() {
+        long now = System.nanoTime();
+        if (now - lastHeardNanos > timeoutNanos) {
+            synchronized (this) {
+                if (task == null) {
+                    return;
+                }
+                stop();
+            }
+            onDead.run();
+            return;
+        }
+        if (pingSentNanos < 0) {
+            long sentAt = System.nanoTime();
+            if (sendPing.getAsBoolean()) {
+                pingSentNanos = sentAt;
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package de.hypno.screenlockerdesktop;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+import javafx.scene.image.Image;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Process-wide cache of decoded (or rendered) overlay images.
+ * <p>
+ * Each resource is decoded once and the same {@link Image} is handed to every
+ * {@code ImageView} on every screen, across lock/unlock cycles. An animated GIF keeps all
+ * of its frames decoded, so entries are sized as {@code width * height * 4 * frames} and
+ * the least recently used ones are evicted once the total exceeds the budget
+ * ({@code hypno.imageCache.budgetMb}, 256 MB by default). The most recently requested
+ * image is never evicted, even if it alone exceeds the budget.
+ */
+public final class ImageCache {
+
+    private static final long BUDGET_BYTES = Long.getLong("hypno.imageCache.budgetMb", 256) * 1024 * 1024;
+
+    private static final Map<String, Entry> ENTRIES = new LinkedHashMap<>(4, 0.75f, true);
+    private static long decodedBytes = 0;
+
+    private ImageCache() {
+    }
+
+    private static final class Entry {
+        final Image image;
+        final long bytes;
+
+        Entry(Image image, long bytes) {
+            this.image = image;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Returns the decoded image for a resource next to this class, decoding it on the
+     * first request.
+     */
+    public static synchronized Image get(String resourceName) {
+        Entry entry = ENTRIES.get(resourceName);
+        if (entry == null) {
+            entry = load(resourceName);
+            add(resourceName, entry);
+        }
+        return entry.image;
+    }
+
+    /**
+     * Returns the image cached under {@code key}, creating it with {@code factory} on the
+     * first request. Used for images that are rendered rather than decoded.
+     */
+    public static synchronized Image get(String key, Supplier<Image> factory) {
+        Entry entry = ENTRIES.get(key);
+        if (entry == null) {
+            Image image = factory.get();
+            entry = new Entry(image, (long) image.getWidth() * (long) image.getHeight() * 4);
+            add(key, entry);
+        }
+        return entry.image;
+    }
+
+    private static void add(String key, Entry entry) {
+        ENTRIES.put(key, entry);
+        decodedBytes += entry.bytes;
+        evictOverBudget();
+    }
+
+    /** Estimated heap held by the cached images, in bytes. */
+    public static synchronized long getDecodedBytes() {
+        return decodedBytes;
+    }
+
+    /** Drops every cached image. */
+    public static synchronized void clear() {
+        ENTRIES.clear();
+        decodedBytes = 0;
+    }
+
+    private static Entry load(String resourceName) {
+        InputStream imageStream = ImageCache.class.getResourceAsStream(resourceName);
+        Objects.requireNonNull(imageStream, "Image resource not found: " + resourceName);
+        Image image = new Image(imageStream);
+        if (image.isError()) {
+            throw new IllegalStateException("Could not decode image " + resourceName, image.getException());
+        }
+        long frameBytes = (long) image.getWidth() * (long) image.getHeight() * 4;
+        return new Entry(image, frameBytes * countFrames(resourceName));
+    }
+
+    private static int countFrames(String resourceName) {
+        try (InputStream in = ImageCache.class.getResourceAsStream(resourceName);
+             ImageInputStream imageInput = ImageIO.createImageInputStream(in)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(imageInput);
+            if (!readers.hasNext()) {
+                return 1;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(imageInput);
+                return Math.max(1, reader.getNumImages(true));
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            return 1;
+        }
+    }
+
+    private static void evictOverBudget() {
+        Iterator<Map.Entry<String, Entry>> eldest = ENTRIES.entrySet().iterator();
+        while (decodedBytes > BUDGET_BYTES && ENTRIES.size() > 1) {
+            Entry evicted = eldest.next().getValue();
+            eldest.remove();
+            decodedBytes -= evicted.bytes;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package de.hypno.screenlockerdesktop;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Takes inbound frames off the WebSocket read thread.
+ * <p>
+ * The read thread only puts the raw frame, stamped with its arrival time, into a
+ * bounded queue ({@code hypno.inbound.capacity}, 1024 by default). A virtual thread per
+ * session takes the frames out in order, decodes them and passes each to the handler registered for
+ * its command. Handlers do the protocol work on that thread and leave everything that
+ * touches the UI to a {@link UiBatch}, which is submitted once per run of frames taken
+ * from the queue.
+ * <p>
+ * Overload: when the queue is full, the read thread waits up to
+ * {@code hypno.inbound.overloadMs} (1000 ms by default) for room. It stops reading from
+ * the socket meanwhile, which pushes back on the server through TCP flow control. If
+ * there is still no room, the read thread decodes the frame to see what it is, which
+ * only happens on this path. {@code text}, {@code chat} and {@code list_ctrl} frames,
+ * and frames it cannot make sense of, are dropped and counted in {@link Metrics}, and
+ * so is every following one of them until the queue has room again, without waiting,
+ * so pongs keep being read. Frames that change state, like {@code lock},
+ * {@code unlock} or {@code auth}, are never dropped; the read thread waits for room
+ * instead. At the default capacity that only happens when the dispatcher has been
+ * stuck for a second.
+ */
+public class InboundDispatcher {
+
+    /** Handles one decoded frame on the dispatcher thread; the message is reused afterwards. */
+    public interface Handler {
+        void handle(InboundMessage message);
+    }
+
+    private static final int CAPACITY = Integer.getInteger("hypno.inbound.capacity", 1024);
+    private static final long OVERLOAD_MILLIS = Long.getLong("hypno.inbound.overloadMs", 1000);
+    // Frames handled before the UI batch is submitted, so a long burst still reaches the screen.
+    private static final int MAX_RUN = 64;
+    private static final Log LOG = Log.get(InboundDispatcher.class);
+    // Frames whose loss the user can live with, or that a later frame repeats.
+    private static final Set<Command> DROPPABLE = EnumSet.of(Command.TEXT, Command.CHAT, Command.LIST_CTRL, Command.UNKNOWN);
+
+    /** A frame and when it came off the socket. */
+    private static final class Received {
+        final String frame;
+        final long receivedNanos;
+
+        Received(String frame, long receivedNanos) {
+            this.frame = frame;
+            this.receivedNanos = receivedNanos;
+        }
+    }
+
+    private final BlockingQueue<Received> queue;
+    private final Map<Command, Handler> handlers = new EnumMap<>(Command.class);
+    private final UiBatch uiBatch;
+    // The running dispatcher thread, or null until the next frame starts one. Writes guarded by "this".
+    private volatile Thread thread;
+    // Read thread only. Set after the queue stayed full; cleared once a frame fits again.
+    private boolean overloaded = false;
+    private final InboundMessage probe = new InboundMessage();
+
+    public InboundDispatcher(UiBatch uiBatch) {
+        this(uiBatch, CAPACITY);
+    }
+
+    public InboundDispatcher(UiBatch uiBatch, int capacity) {
+        this.uiBatch = uiBatch;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /** Registers the handler of {@code command}. Only call it before the first frame arrives. */
+    public void register(Command command, Handler handler) {
+        handlers.put(command, handler);
+    }
+
+    /**
+     * Queues a frame for the dispatcher. Called on the read thread.
+     *
+     * @param receivedNanos {@link System#nanoTime()} when the frame came off the socket,
+     *                      handed to the handler as {@link InboundMessage#receivedNanos()}
+     * @return false if the frame was dropped because the queue stayed full
+     */
+    public boolean enqueue(String frame, long receivedNanos) {
+        if (thread == null) {
+            startThread();
+        }
+        Received received = new Received(frame, receivedNanos);
+        if (queue.offer(received)) {
+            overloaded = false;
+            return true;
+        }
+        if (!overloaded) {
+            try {
+                if (queue.offer(received, OVERLOAD_MILLIS, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            overloaded = true;
+            LOG.warn("Inbound queue full for {} ms, dropping text, chat and list_ctrl frames until it has room",
+                    OVERLOAD_MILLIS);
+        }
+        if (!isDroppable(frame)) {
+            try {
+                queue.put(received);
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOG.warn("Interrupted while waiting for room, dropping a frame of {} chars", frame.length());
+            }
+        }
+        Metrics.inboundDropped();
+        return false;
+    }
+
+    private boolean isDroppable(String frame) {
+        try {
+            MessageDecoder.decode(frame, probe);
+        } catch (IllegalArgumentException e) {
+            // The dispatcher would drop it anyway.
+            return true;
+        }
+        return DROPPABLE.contains(probe.command());
+    }
+
+    private synchronized void startThread() {
+        if (thread == null) {
+            thread = Thread.ofVirtual().name("InboundDispatcher").start(this::dispatchLoop);
+        }
+    }
+
+    /**
+     * Stops the dispatcher thread and drops the frames still queued, e.g. when the
+     * session closes. A frame arriving later starts a new thread.
+     */
+    public synchronized void close() {
+        Thread current = thread;
+        thread = null;
+        queue.clear();
+        if (current != null) {
+            current.interrupt();
+        }
+    }
+
+    private void dispatchLoop() {
+        // Owned by this thread, so one stopped by close() cannot disturb its successor.
+        InboundMessage message = new InboundMessage();
+        List<Received> run = new ArrayList<>(MAX_RUN);
+        while (true) {
+            try {
+                run.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(run, MAX_RUN - 1);
+            for (Received received : run) {
+                dispatch(received, message);
+            }
+            run.clear();
+            uiBatch.submit();
+        }
+    }
+
+    private void dispatch(Received received, InboundMessage message) {
+        String frame = received.frame;
+        try {
+            MessageDecoder.decode(frame, message);
+        } catch (IllegalArgumentException e) {
+            LOG.warn("Could not parse message of {} chars: {}", frame.length(), e.getMessage());
+            Metrics.parseFailure();
+            return;
+        }
+        message.receivedNanos = received.receivedNanos;
+        Metrics.frameIn(message.command(), frame.length());
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("RECEIVED {} for {}: {}", message.commandName(), message.target(),
+                    Log.redact(message.command(), message.data()));
+        }
+
+        Handler handler = handlers.get(message.command());
+        if (handler == null) {
+            if (message.commandName() == null) {
+                LOG.warn("Could not parse 'cmd' from message of {} chars", frame.length());
+            } else {
+                LOG.warn("Received unknown command: {}", message.commandName());
+            }
+            return;
+        }
+        try {
+            handler.handle(message);
+        } catch (RuntimeException e) {
+            LOG.error("Failed to process incoming {} message: {}", message.command(), e.getMessage());
+        }
+    }
+}
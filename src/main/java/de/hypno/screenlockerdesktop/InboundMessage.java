@@ -0,0 +1,108 @@
+package de.hypno.screenlockerdesktop;
+
+/**
+ * A decoded {@code {target, cmd, data, apiVersion}} envelope.
+ * <p>
+ * The message does not copy the frame: it keeps the frame and the offsets of each
+ * value found by {@link MessageDecoder}, and only materializes a String when one of
+ * the accessors is called. An instance can be refilled by the decoder, so a single
+ * message per reading thread is enough.
+ */
+public final class InboundMessage {
+
+    /** The JSON type of the {@code data} value. */
+    public enum DataType { ABSENT, NULL, STRING, NUMBER, BOOLEAN, ARRAY, OBJECT }
+
+    String frame;
+    Command command = Command.UNKNOWN;
+    int apiVersion;
+
+    // Spans are [start, end) into the frame. Strings exclude their quotes.
+    int cmdStart = -1, cmdEnd = -1;
+    boolean cmdEscaped;
+    int targetStart = -1, targetEnd = -1;
+    boolean targetEscaped;
+    int dataStart = -1, dataEnd = -1;
+    boolean dataEscaped;
+    DataType dataType = DataType.ABSENT;
+    // Set by the InboundDispatcher; -1 for messages decoded elsewhere.
+    long receivedNanos = -1;
+
+    void reset(String frame) {
+        this.frame = frame;
+        command = Command.UNKNOWN;
+        apiVersion = 0;
+        cmdStart = cmdEnd = targetStart = targetEnd = dataStart = dataEnd = -1;
+        cmdEscaped = targetEscaped = dataEscaped = false;
+        dataType = DataType.ABSENT;
+        receivedNanos = -1;
+    }
+
+    public String frame() {
+        return frame;
+    }
+
+    public Command command() {
+        return command;
+    }
+
+    /** The raw wire name of the command, useful for logging unknown commands. */
+    public String commandName() {
+        return stringValue(cmdStart, cmdEnd, cmdEscaped);
+    }
+
+    public String target() {
+        return stringValue(targetStart, targetEnd, targetEscaped);
+    }
+
+    /** {@link System#nanoTime()} when the frame came off the socket, or -1 if unknown. */
+    public long receivedNanos() {
+        return receivedNanos;
+    }
+
+    public int apiVersion() {
+        return apiVersion;
+    }
+
+    public DataType dataType() {
+        return dataType;
+    }
+
+    /**
+     * Returns the {@code data} value: the unescaped text for strings, {@code null} for
+     * a JSON null or a missing value, and the raw JSON text for everything else
+     * (numbers, booleans, arrays and objects).
+     */
+    public String data() {
+        switch (dataType) {
+            case ABSENT:
+            case NULL:
+                return null;
+            case STRING:
+                return stringValue(dataStart, dataEnd, dataEscaped);
+            default:
+                return frame.substring(dataStart, dataEnd);
+        }
+    }
+
+    /** Compares a string {@code data} value with {@code expected} without allocating. */
+    public boolean dataEquals(String expected) {
+        if (dataType != DataType.STRING || dataEscaped) {
+            return dataType == DataType.STRING && expected.equals(data());
+        }
+        int length = dataEnd - dataStart;
+        return length == expected.length() && frame.regionMatches(dataStart, expected, 0, length);
+    }
+
+    private String stringValue(int start, int end, boolean escaped) {
+        if (start < 0) {
+            return null;
+        }
+        return escaped ? MessageDecoder.unescape(frame, start, end) : frame.substring(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return frame;
+    }
+}
@@ -0,0 +1,130 @@
+package de.hypno.screenlockerdesktop;
+
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.BooleanControl;
+import javax.sound.sampled.CompoundControl;
+import javax.sound.sampled.Control;
+import javax.sound.sampled.FloatControl;
+import javax.sound.sampled.Line;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.Mixer;
+import javax.sound.sampled.Port;
+
+/**
+ * Mutes through the mute and volume controls that Java Sound exposes on the mixer's
+ * output ports (on Linux these are the ALSA "Master" controls).
+ * <p>
+ * The port is opened once and kept open, so muting and unmuting are plain control
+ * changes: no child process is started.
+ */
+public class JavaSoundAudioBackend implements AudioBackend {
+
+    private final Port port;
+    private final BooleanControl muteControl;
+    private final FloatControl volumeControl;
+
+    // The volume to restore on unmute, or NaN if there is nothing to restore.
+    private float lastVolume = Float.NaN;
+
+    private JavaSoundAudioBackend(Port port, BooleanControl muteControl, FloatControl volumeControl) {
+        this.port = port;
+        this.muteControl = muteControl;
+        this.volumeControl = volumeControl;
+    }
+
+    /**
+     * Opens the first output port that has a mute control, preferring one named
+     * "Master".
+     *
+     * @return the backend, or {@code null} if Java Sound offers no usable port
+     */
+    public static JavaSoundAudioBackend open() {
+        JavaSoundAudioBackend fallback = null;
+        for (Mixer.Info mixerInfo : AudioSystem.getMixerInfo()) {
+            Mixer mixer = AudioSystem.getMixer(mixerInfo);
+            for (Line.Info lineInfo : mixer.getTargetLineInfo()) {
+                if (!(lineInfo instanceof Port.Info)) {
+                    continue;
+                }
+                JavaSoundAudioBackend backend = tryOpen(mixer, (Port.Info) lineInfo);
+                if (backend == null) {
+                    continue;
+                }
+                if (((Port.Info) lineInfo).getName().toLowerCase().contains("master")) {
+                    if (fallback != null) {
+                        fallback.close();
+                    }
+                    return backend;
+                }
+                if (fallback == null) {
+                    fallback = backend;
+                } else {
+                    backend.close();
+                }
+            }
+        }
+        return fallback;
+    }
+
+    private static JavaSoundAudioBackend tryOpen(Mixer mixer, Port.Info info) {
+        Port port;
+        try {
+            port = (Port) mixer.getLine(info);
+            port.open();
+        } catch (LineUnavailableException | IllegalArgumentException | SecurityException e) {
+            return null;
+        }
+        BooleanControl mute = (BooleanControl) findControl(port.getControls(), BooleanControl.Type.MUTE);
+        if (mute == null) {
+            port.close();
+            return null;
+        }
+        FloatControl volume = (FloatControl) findControl(port.getControls(), FloatControl.Type.VOLUME);
+        return new JavaSoundAudioBackend(port, mute, volume);
+    }
+
+    private static Control findControl(Control[] controls, Control.Type type) {
+        for (Control control : controls) {
+            if (control.getType() == type) {
+                return control;
+            }
+            if (control instanceof CompoundControl) {
+                Control nested = findControl(((CompoundControl) control).getMemberControls(), type);
+                if (nested != null) {
+                    return nested;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String name() {
+        return "javasound:" + port.getLineInfo();
+    }
+
+    @Override
+    public void mute() {
+        if (volumeControl != null) {
+            lastVolume = volumeControl.getValue();
+        }
+        muteControl.setValue(true);
+    }
+
+    @Override
+    public void unmute() {
+        try {
+            muteControl.setValue(false);
+            if (volumeControl != null && !Float.isNaN(lastVolume)) {
+                volumeControl.setValue(lastVolume);
+            }
+        } finally {
+            lastVolume = Float.NaN;
+        }
+    }
+
+    @Override
+    public void close() {
+        port.close();
+    }
+}
@@ -0,0 +1,203 @@
+package de.hypno.screenlockerdesktop;
+
+/**
+ * Minimal pull reader for JSON text, used for the structured {@code data} payloads
+ * that {@link MessageDecoder} hands over as raw JSON.
+ * <p>
+ * Values are read in document order straight from the source string; names and
+ * strings are only materialised when asked for, and {@link #skipValue()} passes over
+ * anything the caller does not need. It is lenient about commas and does not check
+ * that brackets match beyond what it is asked to read. Malformed input throws
+ * {@link IllegalArgumentException}.
+ */
+public final class JsonReader {
+
+    public enum Token { BEGIN_ARRAY, END_ARRAY, BEGIN_OBJECT, END_OBJECT, NAME, STRING, NUMBER, BOOLEAN, NULL, END }
+
+    private final String json;
+    private int pos;
+    // True right after a name's colon, when the next string is a value rather than a name.
+    private boolean afterName = false;
+    // Depth of objects whose next string is a name, as a bit stack (1 = object).
+    private long containers = 0;
+    private int depth = 0;
+
+    public JsonReader(String json) {
+        this.json = json;
+    }
+
+    public Token peek() {
+        skipSeparators();
+        if (pos >= json.length()) {
+            return Token.END;
+        }
+        char c = json.charAt(pos);
+        switch (c) {
+            case '[': return Token.BEGIN_ARRAY;
+            case ']': return Token.END_ARRAY;
+            case '{': return Token.BEGIN_OBJECT;
+            case '}': return Token.END_OBJECT;
+            case '"': return inObject() && !afterName ? Token.NAME : Token.STRING;
+            case 'n': return Token.NULL;
+            case 't':
+            case 'f': return Token.BOOLEAN;
+            default: return Token.NUMBER;
+        }
+    }
+
+    /** Whether the current array or object has another element. */
+    public boolean hasNext() {
+        Token token = peek();
+        return token != Token.END_ARRAY && token != Token.END_OBJECT && token != Token.END;
+    }
+
+    public void beginArray() {
+        open(Token.BEGIN_ARRAY, false);
+    }
+
+    public void endArray() {
+        close(Token.END_ARRAY);
+    }
+
+    public void beginObject() {
+        open(Token.BEGIN_OBJECT, true);
+    }
+
+    public void endObject() {
+        close(Token.END_OBJECT);
+    }
+
+    public String nextName() {
+        expect(Token.NAME);
+        String name = readString();
+        pos = MessageDecoder.skipWhitespace(json, pos);
+        if (pos >= json.length() || json.charAt(pos) != ':') {
+            throw malformed("expected ':'");
+        }
+        pos++;
+        afterName = true;
+        return name;
+    }
+
+    /** Reads a string value; numbers and booleans are returned as their literal text. */
+    public String nextString() {
+        Token token = peek();
+        afterName = false;
+        if (token == Token.STRING) {
+            return readString();
+        }
+        if (token == Token.NUMBER || token == Token.BOOLEAN) {
+            int start = pos;
+            pos = literalEnd(pos);
+            return json.substring(start, pos);
+        }
+        throw malformed("expected a string but was " + token);
+    }
+
+    public boolean nextBoolean() {
+        expect(Token.BOOLEAN);
+        afterName = false;
+        boolean value = json.startsWith("true", pos);
+        pos = literalEnd(pos);
+        return value;
+    }
+
+    public void nextNull() {
+        expect(Token.NULL);
+        afterName = false;
+        pos = literalEnd(pos);
+    }
+
+    /** Skips the next value, including everything nested inside it. */
+    public void skipValue() {
+        Token token = peek();
+        afterName = false;
+        switch (token) {
+            case BEGIN_ARRAY:
+            case BEGIN_OBJECT:
+                pos = MessageDecoder.skipContainer(json, pos);
+                break;
+            case NAME:
+                nextName();
+                skipValue();
+                break;
+            case STRING:
+                pos = MessageDecoder.skipString(json, pos) + 1;
+                break;
+            case END_ARRAY:
+            case END_OBJECT:
+            case END:
+                throw malformed("no value to skip");
+            default:
+                pos = literalEnd(pos);
+                break;
+        }
+    }
+
+    private void open(Token expected, boolean object) {
+        expect(expected);
+        afterName = false;
+        if (depth >= 63) {
+            throw malformed("nested too deeply");
+        }
+        containers = (containers << 1) | (object ? 1 : 0);
+        depth++;
+        pos++;
+    }
+
+    private void close(Token expected) {
+        expect(expected);
+        containers >>>= 1;
+        depth--;
+        pos++;
+    }
+
+    private boolean inObject() {
+        return depth > 0 && (containers & 1) == 1;
+    }
+
+    private void expect(Token expected) {
+        Token token = peek();
+        if (token != expected) {
+            throw malformed("expected " + expected + " but was " + token);
+        }
+    }
+
+    private String readString() {
+        int close = MessageDecoder.skipString(json, pos);
+        int start = pos + 1;
+        pos = close + 1;
+        // Only look inside this string, or one late escape makes every string scan up to it.
+        return json.indexOf('\\', start, close) >= 0
+                ? MessageDecoder.unescape(json, start, close)
+                : json.substring(start, close);
+    }
+
+    private void skipSeparators() {
+        int length = json.length();
+        while (pos < length) {
+            char c = json.charAt(pos);
+            if (c == ',' || Character.isWhitespace(c)) {
+                pos++;
+            } else {
+                break;
+            }
+        }
+    }
+
+    private int literalEnd(int i) {
+        int length = json.length();
+        while (i < length) {
+            char c = json.charAt(i);
+            if (c == ',' || c == ']' || c == '}' || Character.isWhitespace(c)) {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private IllegalArgumentException malformed(String reason) {
+        return new IllegalArgumentException("Malformed JSON at offset " + pos + " of " + json.length() + ": " + reason);
+    }
+}
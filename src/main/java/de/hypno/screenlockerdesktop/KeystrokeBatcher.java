@@ -0,0 +1,77 @@
+package de.hypno.screenlockerdesktop;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the keystrokes typed on the lock overlay and sends them as one "text" frame
+ * per batch instead of one frame per key.
+ * <p>
+ * A batch is sent when the window that opened with its first keystroke elapses, when
+ * it reaches the character limit, or when {@link #flush()} is called. The window does
+ * not restart on every key, so no keystroke waits longer than one window. Both limits
+ * can be tuned with the {@code hypno.keystrokes.batchWindowMs} and
+ * {@code hypno.keystrokes.batchMaxChars} system properties.
+ */
+public class KeystrokeBatcher {
+
+    private static final long WINDOW_MILLIS = Long.getLong("hypno.keystrokes.batchWindowMs", 30);
+    private static final int MAX_CHARS = Integer.getInteger("hypno.keystrokes.batchMaxChars", 32);
+
+    // One timer thread is shared by all batchers; it only ever runs short flushes.
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "KeystrokeBatcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final WebSocketManager webSocketManager;
+    private final String target;
+    private final long windowMillis;
+    private final int maxChars;
+
+    private final StringBuilder pending = new StringBuilder();
+    private ScheduledFuture<?> flushTask;
+
+    public KeystrokeBatcher(WebSocketManager webSocketManager, String target) {
+        this(webSocketManager, target, WINDOW_MILLIS, MAX_CHARS);
+    }
+
+    public KeystrokeBatcher(WebSocketManager webSocketManager, String target, long windowMillis, int maxChars) {
+        this.webSocketManager = webSocketManager;
+        this.target = target;
+        this.windowMillis = windowMillis;
+        this.maxChars = maxChars;
+    }
+
+    /**
+     * Adds typed text to the current batch, sending it if the batch is full.
+     */
+    public synchronized void append(String text) {
+        pending.append(text);
+        if (pending.length() >= maxChars || windowMillis <= 0) {
+            flush();
+        } else if (flushTask == null) {
+            flushTask = SCHEDULER.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Sends whatever is pending right away. Called before an unlock so the controller
+     * receives the typed text before the unlock notification.
+     */
+    public synchronized void flush() {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+        if (pending.length() == 0) {
+            return;
+        }
+        String batch = pending.toString();
+        pending.setLength(0);
+        webSocketManager.sendMessage(target, "text", batch);
+    }
+}
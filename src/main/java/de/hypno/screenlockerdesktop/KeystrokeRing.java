@@ -0,0 +1,60 @@
+package de.hypno.screenlockerdesktop;
+
+/**
+ * Fixed-capacity character ring buffer holding the most recent keystrokes.
+ * <p>
+ * Appending never allocates and never shifts characters; once full, the oldest
+ * characters are overwritten. It is confined to one thread (the FX thread for the
+ * overlay), so it needs no locking.
+ */
+public final class KeystrokeRing {
+
+    private final char[] buffer;
+    private int start = 0;
+    private int size = 0;
+
+    public KeystrokeRing(int capacity) {
+        buffer = new char[capacity];
+    }
+
+    public void append(char c) {
+        int end = start + size;
+        if (end >= buffer.length) {
+            end -= buffer.length;
+        }
+        buffer[end] = c;
+        if (size < buffer.length) {
+            size++;
+        } else if (++start == buffer.length) {
+            start = 0;
+        }
+    }
+
+    public void append(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            append(text.charAt(i));
+        }
+    }
+
+    public int length() {
+        return size;
+    }
+
+    public void clear() {
+        start = 0;
+        size = 0;
+    }
+
+    /** Returns the buffered characters, oldest first. */
+    @Override
+    public String toString() {
+        int firstChunk = Math.min(size, buffer.length - start);
+        if (firstChunk == size) {
+            return new String(buffer, start, size);
+        }
+        char[] ordered = new char[size];
+        System.arraycopy(buffer, start, ordered, 0, firstChunk);
+        System.arraycopy(buffer, 0, ordered, firstChunk, size - firstChunk);
+        return new String(ordered);
+    }
+}
@@ -0,0 +1,121 @@
+package de.hypno.screenlockerdesktop;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.ConstructorParameters;
+
+/**
+ * Lock-free latency histogram with power-of-two microsecond buckets.
+ * <p>
+ * Recording is a handful of atomic adds and never allocates. Percentiles are reported
+ * as the upper bound of the bucket they fall into, so they are accurate to within a
+ * factor of two, which is plenty to tell "50 ms" from "5 s".
+ */
+public final class LatencyHistogram {
+
+    // Bucket i holds samples below 2^i microseconds; the last one is unbounded (> 18 min).
+    private static final int BUCKETS = 31;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+        long micros = nanos / 1000;
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        counts.incrementAndGet(bucket);
+        count.increment();
+        sumNanos.add(nanos);
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            total += copy[i];
+        }
+        long max = maxNanos.get();
+        double mean = total == 0 ? 0 : sumNanos.sum() / 1e6 / total;
+        return new Snapshot(total, mean,
+                percentile(copy, total, 0.50, max),
+                percentile(copy, total, 0.90, max),
+                percentile(copy, total, 0.99, max),
+                max / 1e6);
+    }
+
+    private static double percentile(long[] buckets, long total, double quantile, long maxNanos) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                double upperMillis = (1L << i) / 1000.0;
+                return Math.min(upperMillis, maxNanos / 1e6);
+            }
+        }
+        return maxNanos / 1e6;
+    }
+
+    /** Point-in-time view of a histogram, in milliseconds. Exposed over JMX as composite data. */
+    public static final class Snapshot {
+        private final long count;
+        private final double meanMillis;
+        private final double p50Millis;
+        private final double p90Millis;
+        private final double p99Millis;
+        private final double maxMillis;
+
+        @ConstructorParameters({"count", "meanMillis", "p50Millis", "p90Millis", "p99Millis", "maxMillis"})
+        public Snapshot(long count, double meanMillis, double p50Millis, double p90Millis, double p99Millis, double maxMillis) {
+            this.count = count;
+            this.meanMillis = meanMillis;
+            this.p50Millis = p50Millis;
+            this.p90Millis = p90Millis;
+            this.p99Millis = p99Millis;
+            this.maxMillis = maxMillis;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMeanMillis() {
+            return meanMillis;
+        }
+
+        public double getP50Millis() {
+            return p50Millis;
+        }
+
+        public double getP90Millis() {
+            return p90Millis;
+        }
+
+        public double getP99Millis() {
+            return p99Millis;
+        }
+
+        public double getMaxMillis() {
+            return maxMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d mean=%.1fms p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms",
+                    count, meanMillis, p50Millis, p90Millis, p99Millis, maxMillis);
+        }
+    }
+}
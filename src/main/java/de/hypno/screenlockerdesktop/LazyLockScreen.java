@@ -0,0 +1,53 @@
+package de.hypno.screenlockerdesktop;
+
+import java.util.function.Supplier;
+
+/**
+ * Creates the real {@link LockScreen} on first use, so the overlay and audio classes
+ * are not loaded on the way to the settings window. The first call is normally the
+ * overlay pre-build right after authentication.
+ */
+public class LazyLockScreen implements LockScreen {
+
+    private final Supplier<? extends LockScreen> factory;
+    private volatile LockScreen delegate;
+
+    public LazyLockScreen(Supplier<? extends LockScreen> factory) {
+        this.factory = factory;
+    }
+
+    private LockScreen delegate() {
+        LockScreen current = delegate;
+        if (current == null) {
+            synchronized (this) {
+                current = delegate;
+                if (current == null) {
+                    current = factory.get();
+                    delegate = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    @Override
+    public void prewarmLockOverlay(String imageName) {
+        delegate().prewarmLockOverlay(imageName);
+    }
+
+    @Override
+    public void showLockOverlay(String currentUsername, String imageName, WebSocketManager webSocketManager,
+                                long receivedNanos) {
+        delegate().showLockOverlay(currentUsername, imageName, webSocketManager, receivedNanos);
+    }
+
+    @Override
+    public void hideLockOverlay(String currentUsername) {
+        delegate().hideLockOverlay(currentUsername);
+    }
+
+    @Override
+    public void showMessage(String text) {
+        delegate().showMessage(text);
+    }
+}
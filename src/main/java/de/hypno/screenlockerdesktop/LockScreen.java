@@ -0,0 +1,24 @@
+package de.hypno.screenlockerdesktop;
+
+/**
+ * What {@link WebSocketManager} drives when the server locks, unlocks or chats.
+ * {@link OverlayManager} is the real full-screen implementation. With several
+ * sessions, one lock screen is shared by all of them and stays up while any account
+ * holds a lock.
+ */
+public interface LockScreen {
+
+    /** Prepares the lock screen for {@code imageName} so a later lock shows it quickly. */
+    void prewarmLockOverlay(String imageName);
+
+    /**
+     * @param receivedNanos {@link System#nanoTime()} when the lock frame came off the socket,
+     *                      so the lock latency includes its time in the queues
+     */
+    void showLockOverlay(String currentUsername, String imageName, WebSocketManager webSocketManager, long receivedNanos);
+
+    /** Releases the lock held by {@code currentUsername}'s session. */
+    void hideLockOverlay(String currentUsername);
+
+    void showMessage(String text);
+}
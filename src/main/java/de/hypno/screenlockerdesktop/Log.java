@@ -0,0 +1,331 @@
+package de.hypno.screenlockerdesktop;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Small asynchronous logger.
+ * <p>
+ * A call below the configured level ({@code hypno.log.level}, INFO by default) returns
+ * after one comparison. Anything else is captured as an event, with its {@code {}}
+ * placeholders still unformatted, and put into a bounded lock-free ring buffer. A
+ * background thread formats the events and writes them to a rotating log file under
+ * {@code hypno.log.dir} (default {@code ~/.screenlocker/logs}) and, unless
+ * {@code hypno.log.console=false}, to stdout. If the buffer is full the event is
+ * dropped and counted rather than blocking the caller. Arguments are formatted later on
+ * the writer thread, so only pass immutable values.
+ * <p>
+ * Never log credentials or typed text; use {@link #redact(Command, Object)} for the
+ * {@code data} of a frame.
+ */
+public final class Log {
+
+    public enum Level { DEBUG, INFO, WARN, ERROR }
+
+    private static final Level THRESHOLD = parseLevel(System.getProperty("hypno.log.level", "INFO"));
+    private static final boolean CONSOLE = !"false".equals(System.getProperty("hypno.log.console"));
+    private static final Path LOG_DIR = Paths.get(System.getProperty("hypno.log.dir",
+            Paths.get(System.getProperty("user.home"), ".screenlocker", "logs").toString()));
+    private static final String FILE_NAME = "screenlocker.log";
+    private static final long MAX_FILE_BYTES = 5L * 1024 * 1024;
+    private static final int KEPT_FILES = 3;
+    private static final int CAPACITY = 8192;
+
+    private static final DateTimeFormatter TIME_FORMATTER =
+            DateTimeFormatter.ofPattern("HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    private static final class Event {
+        final Level level;
+        final long timeMillis;
+        final String component;
+        final String pattern;
+        final Object[] args;
+        final Throwable thrown;
+
+        Event(Level level, String component, String pattern, Object[] args, Throwable thrown) {
+            this.level = level;
+            this.timeMillis = System.currentTimeMillis();
+            this.component = component;
+            this.pattern = pattern;
+            this.args = args;
+            this.thrown = thrown;
+        }
+    }
+
+    // Multi-producer, single-consumer ring. Producers claim a sequence number with CAS
+    // and publish into its slot; the writer empties slots in sequence order.
+    private static final AtomicReferenceArray<Event> SLOTS = new AtomicReferenceArray<>(CAPACITY);
+    private static final AtomicLong TAIL = new AtomicLong();
+    private static volatile long head = 0;
+    private static final AtomicLong DROPPED = new AtomicLong();
+
+    static {
+        Thread writer = new Thread(Log::writeLoop, "LogWriter");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::awaitDrained, "LogFlush"));
+    }
+
+    private final String component;
+
+    private Log(String component) {
+        this.component = component;
+    }
+
+    public static Log get(String component) {
+        return new Log(component);
+    }
+
+    public static Log get(Class<?> type) {
+        return new Log(type.getSimpleName());
+    }
+
+    public boolean isDebugEnabled() {
+        return THRESHOLD == Level.DEBUG;
+    }
+
+    public boolean isEnabled(Level level) {
+        return level.ordinal() >= THRESHOLD.ordinal();
+    }
+
+    public void debug(String message) {
+        if (THRESHOLD == Level.DEBUG) enqueue(Level.DEBUG, message, null, null);
+    }
+
+    public void debug(String pattern, Object arg) {
+        if (THRESHOLD == Level.DEBUG) enqueue(Level.DEBUG, pattern, new Object[] { arg }, null);
+    }
+
+    public void debug(String pattern, Object arg1, Object arg2) {
+        if (THRESHOLD == Level.DEBUG) enqueue(Level.DEBUG, pattern, new Object[] { arg1, arg2 }, null);
+    }
+
+    public void debug(String pattern, Object... args) {
+        if (THRESHOLD == Level.DEBUG) enqueue(Level.DEBUG, pattern, args, null);
+    }
+
+    public void info(String message) {
+        if (isEnabled(Level.INFO)) enqueue(Level.INFO, message, null, null);
+    }
+
+    public void info(String pattern, Object arg) {
+        if (isEnabled(Level.INFO)) enqueue(Level.INFO, pattern, new Object[] { arg }, null);
+    }
+
+    public void info(String pattern, Object arg1, Object arg2) {
+        if (isEnabled(Level.INFO)) enqueue(Level.INFO, pattern, new Object[] { arg1, arg2 }, null);
+    }
+
+    public void info(String pattern, Object... args) {
+        if (isEnabled(Level.INFO)) enqueue(Level.INFO, pattern, args, null);
+    }
+
+    public void warn(String message) {
+        if (isEnabled(Level.WARN)) enqueue(Level.WARN, message, null, null);
+    }
+
+    public void warn(String pattern, Object arg) {
+        if (isEnabled(Level.WARN)) enqueue(Level.WARN, pattern, new Object[] { arg }, null);
+    }
+
+    public void warn(String pattern, Object arg1, Object arg2) {
+        if (isEnabled(Level.WARN)) enqueue(Level.WARN, pattern, new Object[] { arg1, arg2 }, null);
+    }
+
+    public void warn(String pattern, Object... args) {
+        if (isEnabled(Level.WARN)) enqueue(Level.WARN, pattern, args, null);
+    }
+
+    public void error(String message) {
+        enqueue(Level.ERROR, message, null, null);
+    }
+
+    public void error(String message, Throwable thrown) {
+        enqueue(Level.ERROR, message, null, thrown);
+    }
+
+    public void error(String pattern, Object arg) {
+        enqueue(Level.ERROR, pattern, new Object[] { arg }, null);
+    }
+
+    public void error(String pattern, Object arg1, Object arg2) {
+        enqueue(Level.ERROR, pattern, new Object[] { arg1, arg2 }, null);
+    }
+
+    /**
+     * Returns a loggable form of a frame's {@code data}: passwords and typed text are
+     * replaced by their length.
+     */
+    public static Object redact(Command command, Object data) {
+        if (data == null) {
+            return null;
+        }
+        if (command == Command.AUTH || command == Command.TEXT) {
+            return data instanceof String ? "<redacted " + ((String) data).length() + " chars>" : "<redacted>";
+        }
+        return data;
+    }
+
+    /** Number of events dropped because the ring buffer was full. */
+    public static long getDroppedCount() {
+        return DROPPED.get();
+    }
+
+    private void enqueue(Level level, String pattern, Object[] args, Throwable thrown) {
+        Event event = new Event(level, component, pattern, args, thrown);
+        while (true) {
+            long tail = TAIL.get();
+            if (tail - head >= CAPACITY) {
+                DROPPED.incrementAndGet();
+                return;
+            }
+            if (TAIL.compareAndSet(tail, tail + 1)) {
+                SLOTS.lazySet((int) (tail % CAPACITY), event);
+                return;
+            }
+        }
+    }
+
+    private static void writeLoop() {
+        RotatingWriter out = new RotatingWriter();
+        StringBuilder line = new StringBuilder(256);
+        long reportedDrops = 0;
+        while (true) {
+            int index = (int) (head % CAPACITY);
+            Event event = SLOTS.get(index);
+            if (event == null) {
+                if (head == TAIL.get()) {
+                    out.flush();
+                }
+                LockSupport.parkNanos(5_000_000);
+                continue;
+            }
+            SLOTS.set(index, null);
+            head = head + 1;
+
+            long drops = DROPPED.get();
+            if (drops != reportedDrops) {
+                line.setLength(0);
+                line.append("[log] ").append(drops - reportedDrops).append(" log events dropped, buffer full");
+                out.write(line);
+                reportedDrops = drops;
+            }
+
+            line.setLength(0);
+            format(event, line);
+            out.write(line);
+        }
+    }
+
+    /** Waits briefly for the writer to catch up, used when the JVM exits. */
+    private static void awaitDrained() {
+        long deadline = System.nanoTime() + 1_000_000_000L;
+        while (head < TAIL.get() && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(5_000_000);
+        }
+        LockSupport.parkNanos(10_000_000);
+    }
+
+    private static void format(Event event, StringBuilder line) {
+        line.append('[');
+        TIME_FORMATTER.formatTo(Instant.ofEpochMilli(event.timeMillis), line);
+        line.append("] ").append(event.level).append(" [").append(event.component).append("] ");
+        String pattern = event.pattern;
+        Object[] args = event.args;
+        int argIndex = 0;
+        int start = 0;
+        if (args != null) {
+            int placeholder;
+            while (argIndex < args.length && (placeholder = pattern.indexOf("{}", start)) >= 0) {
+                line.append(pattern, start, placeholder).append(args[argIndex++]);
+                start = placeholder + 2;
+            }
+        }
+        line.append(pattern, start, pattern.length());
+        if (event.thrown != null) {
+            StringWriter trace = new StringWriter();
+            event.thrown.printStackTrace(new PrintWriter(trace));
+            line.append(System.lineSeparator()).append(trace.toString().stripTrailing());
+        }
+    }
+
+    private static Level parseLevel(String value) {
+        try {
+            return Level.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return Level.INFO;
+        }
+    }
+
+    /** Appends lines to the log file, rolling it over at {@link #MAX_FILE_BYTES}. */
+    private static final class RotatingWriter {
+        private Writer file;
+        private long written;
+        private boolean fileFailed = false;
+
+        void write(CharSequence line) {
+            if (CONSOLE) {
+                System.out.println(line);
+            }
+            if (fileFailed) {
+                return;
+            }
+            try {
+                if (file == null) {
+                    open();
+                } else if (written >= MAX_FILE_BYTES) {
+                    rotate();
+                }
+                file.append(line).append(System.lineSeparator());
+                written += line.length() + 1;
+            } catch (IOException e) {
+                fileFailed = true;
+                System.err.println("[log] Writing the log file failed, logging to the console only: " + e.getMessage());
+            }
+        }
+
+        void flush() {
+            if (file != null) {
+                try {
+                    file.flush();
+                } catch (IOException e) {
+                    fileFailed = true;
+                }
+            }
+        }
+
+        private void open() throws IOException {
+            Files.createDirectories(LOG_DIR);
+            Path path = LOG_DIR.resolve(FILE_NAME);
+            written = Files.exists(path) ? Files.size(path) : 0;
+            file = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+
+        private void rotate() throws IOException {
+            file.close();
+            for (int i = KEPT_FILES - 1; i >= 1; i--) {
+                Path older = LOG_DIR.resolve(FILE_NAME + "." + i);
+                if (Files.exists(older)) {
+                    Files.move(older, LOG_DIR.resolve(FILE_NAME + "." + (i + 1)), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Files.move(LOG_DIR.resolve(FILE_NAME), LOG_DIR.resolve(FILE_NAME + ".1"), StandardCopyOption.REPLACE_EXISTING);
+            open();
+        }
+    }
+}
@@ -15,15 +15,41 @@ import java.awt.Toolkit;
 import java.awt.TrayIcon;
 import java.io.IOException;
 import java.net.URL;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 
 public class MainApp extends Application {
 
+    private static final Log LOG = Log.get(MainApp.class);
+
     private static Scene scene;
+    private static SessionManager sessionManager;
     private static WebSocketManager webSocketManager;
+    // Holds connection events until the settings window exists.
+    private static DeferredConnectionListener earlyListener;
+    // Set when the sessions already started connecting with the stored credentials.
+    private static boolean connectingEarly = false;
+    private static final CountDownLatch FX_STARTED = new CountDownLatch(1);
+    private static final Object PRE_FX_LOCK = new Object();
+    // UI batches that arrived before the toolkit was up, at most one per session: a UiBatch
+    // submits its task once and merges everything after it into that task until it runs.
+    // Guarded by PRE_FX_LOCK; null once they ran.
+    private static Set<Runnable> preFxBatches = new LinkedHashSet<>();
     private TrayIcon trayIcon;
 
+    /** Opens the sessions when the JavaFX launcher started the app without {@link #main}. */
+    @Override
+    public void init() {
+        openSessions();
+    }
+
     @Override
     public void start(Stage stage) throws IOException {
+        StartupTimeline.mark(StartupTimeline.Mark.FX_STARTED);
+        FX_STARTED.countDown();
+        Metrics.register();
+
         // Prevent the application from exiting when the last window is closed
         Platform.setImplicitExit(false);
 
@@ -31,20 +57,28 @@ public class MainApp extends Application {
         Parent root = fxmlLoader.load();
         SettingsController controller = fxmlLoader.getController();
 
-        // Create the managers
-        OverlayManager overlayManager = new OverlayManager();
-        webSocketManager = new WebSocketManager(overlayManager, controller);
         controller.setWebSocketManager(webSocketManager);
+        if (connectingEarly) {
+            // The connection is already on its way; show its state from here on.
+            controller.showConnecting();
+        }
+        earlyListener.attach(controller);
+        runPreFxBatches();
         
         // Basic window setup
-        scene = new Scene(root, 400, 400);
+        // Sized from the FXML root, so the window grows with the settings pane.
+        scene = new Scene(root);
         stage.setTitle("Screen Locker Settings");
         stage.setScene(scene);
         
-        // Add the system tray icon
-        setupSystemTray(stage);
-        
         stage.show();
+        StartupTimeline.mark(StartupTimeline.Mark.WINDOW_SHOWN);
+
+        // Add the system tray icon. Starting AWT takes a while, so keep it off the FX thread
+        // and out of the way of the first frame.
+        Thread traySetup = new Thread(() -> setupSystemTray(stage), "TraySetup");
+        traySetup.setDaemon(true);
+        traySetup.start();
 
         // When the 'X' is clicked on the settings window, just hide it.
         stage.setOnCloseRequest(event -> {
@@ -56,18 +90,19 @@ public class MainApp extends Application {
     private void setupSystemTray(Stage stage) {
         // Check if SystemTray is supported
         if (!SystemTray.isSupported()) {
-            System.out.println("SystemTray is not supported");
+            LOG.warn("SystemTray is not supported");
             return;
         }
 
         // Create the popup menu for the tray icon
         final PopupMenu popup = new PopupMenu();
         
-        // Using an existing gif for the icon, a 16x16 png would be better
-        URL imageURL = MainApp.class.getResource("spiral1.gif");
+        // The small application icon; the overlay's spiral gif is megabytes to decode.
+        URL imageURL = MainApp.class.getResource("tray.png");
         java.awt.Image image = Toolkit.getDefaultToolkit().getImage(imageURL);
 
         trayIcon = new TrayIcon(image, "Screen Locker");
+        trayIcon.setImageAutoSize(true);
         final SystemTray tray = SystemTray.getSystemTray();
 
         // Create menu items
@@ -85,7 +120,7 @@ public class MainApp extends Application {
         showItem.addActionListener(e -> Platform.runLater(stage::show));
 
         exitItem.addActionListener(e -> {
-            webSocketManager.close();
+            sessionManager.closeAll();
             Platform.exit();
             tray.remove(trayIcon);
             System.exit(0);
@@ -94,11 +129,71 @@ public class MainApp extends Application {
         try {
             tray.add(trayIcon);
         } catch (AWTException e) {
-            System.out.println("TrayIcon could not be added.");
+            LOG.warn("TrayIcon could not be added.");
+        }
+    }
+
+    /** The overlay is only built once it is first needed, and not before the FX toolkit runs. */
+    private static LockScreen createLockScreen() {
+        return new LazyLockScreen(() -> {
+            try {
+                FX_STARTED.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new OverlayManager();
+        });
+    }
+
+    /**
+     * Runs a batch of UI effects as one FX task. Batches that arrive before the toolkit is
+     * up are held until the settings window exists, rather than run on the dispatcher
+     * thread, which would block there as soon as one needs the overlay.
+     */
+    private static void runOnFxThread(Runnable batch) {
+        synchronized (PRE_FX_LOCK) {
+            if (preFxBatches != null) {
+                preFxBatches.add(batch);
+                return;
+            }
+        }
+        Platform.runLater(batch);
+    }
+
+    /** Runs the batches held back by {@link #runOnFxThread}, in order; later ones queue behind them. */
+    private static void runPreFxBatches() {
+        Set<Runnable> batches;
+        synchronized (PRE_FX_LOCK) {
+            batches = preFxBatches;
+            preFxBatches = null;
+        }
+        for (Runnable batch : batches) {
+            batch.run();
+        }
+    }
+
+    /**
+     * Creates the sessions and, with a stored login, starts DNS, TLS and auth right away,
+     * in parallel with loading the UI, so a freshly booted machine becomes lockable as
+     * early as possible. Only the first call does anything.
+     */
+    private static synchronized void openSessions() {
+        if (sessionManager != null) {
+            return;
+        }
+        earlyListener = new DeferredConnectionListener();
+        sessionManager = new SessionManager(createLockScreen(), earlyListener, MainApp::runOnFxThread);
+        webSocketManager = sessionManager.getPrimary();
+        StoredCredentials credentials = StoredCredentials.load();
+        if (credentials.isComplete()) {
+            connectingEarly = true;
+            webSocketManager.start(credentials.getUsername(), credentials.getPassword(), credentials.getSelectedImage());
         }
+        sessionManager.openConfiguredAccounts();
     }
 
     public static void main(String[] args) {
+        openSessions();
         launch(args);
     }
 }
\ No newline at end of file
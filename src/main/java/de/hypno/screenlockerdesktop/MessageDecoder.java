@@ -0,0 +1,249 @@
+package de.hypno.screenlockerdesktop;
+
+/**
+ * Single-pass decoder for the {@code {target, cmd, data, apiVersion}} envelope and its
+ * compact apiVersion 3 form {@code {t, c, d, v}}, where {@code c} may be a command's
+ * short code.
+ * <p>
+ * The frame is scanned exactly once. Keys are matched in place, values are recorded as
+ * offsets into the frame, and nested arrays or objects in {@code data} are skipped with
+ * a depth counter that respects quoted strings and escapes. Nothing is allocated during
+ * the scan; strings are only created when {@link InboundMessage} accessors ask for them.
+ */
+public final class MessageDecoder {
+
+    private MessageDecoder() {
+    }
+
+    /** Decodes {@code frame} into a new message. */
+    public static InboundMessage decode(String frame) {
+        InboundMessage message = new InboundMessage();
+        decode(frame, message);
+        return message;
+    }
+
+    /**
+     * Decodes {@code frame} into {@code message}, overwriting its previous contents.
+     *
+     * @throws IllegalArgumentException if the frame is not a well-formed JSON object
+     */
+    public static void decode(String frame, InboundMessage message) {
+        message.reset(frame);
+        int length = frame.length();
+        int i = skipWhitespace(frame, 0);
+        expect(frame, i, '{');
+        i = skipWhitespace(frame, i + 1);
+        if (i < length && frame.charAt(i) == '}') {
+            return;
+        }
+
+        while (true) {
+            expect(frame, i, '"');
+            int keyStart = i + 1;
+            int keyEnd = skipString(frame, i);
+            i = skipWhitespace(frame, keyEnd + 1);
+            expect(frame, i, ':');
+            i = skipWhitespace(frame, i + 1);
+            i = readValue(frame, i, keyStart, keyEnd, message);
+            i = skipWhitespace(frame, i);
+            if (i >= length) {
+                throw malformed(frame, i, "unterminated object");
+            }
+            char c = frame.charAt(i);
+            if (c == '}') {
+                break;
+            }
+            expect(frame, i, ',');
+            i = skipWhitespace(frame, i + 1);
+        }
+        if (message.cmdStart >= 0) {
+            message.command = message.cmdEscaped
+                    ? Command.lookup(message.commandName())
+                    : Command.lookup(frame, message.cmdStart, message.cmdEnd);
+        }
+    }
+
+    /** Reads the value starting at {@code i} for the given key and returns the index after it. */
+    private static int readValue(String frame, int i, int keyStart, int keyEnd, InboundMessage message) {
+        if (i >= frame.length()) {
+            throw malformed(frame, i, "missing value");
+        }
+        char c = frame.charAt(i);
+        int end;
+        if (c == '"') {
+            boolean escaped = false;
+            end = -1;
+            for (int j = i + 1; j < frame.length(); j++) {
+                char s = frame.charAt(j);
+                if (s == '\\') {
+                    escaped = true;
+                    j++;
+                } else if (s == '"') {
+                    end = j;
+                    break;
+                }
+            }
+            if (end < 0) {
+                throw malformed(frame, i, "unterminated string");
+            }
+            if (isKey(frame, keyStart, keyEnd, "cmd", "c")) {
+                message.cmdStart = i + 1;
+                message.cmdEnd = end;
+                message.cmdEscaped = escaped;
+            } else if (isKey(frame, keyStart, keyEnd, "target", "t")) {
+                message.targetStart = i + 1;
+                message.targetEnd = end;
+                message.targetEscaped = escaped;
+            } else if (isKey(frame, keyStart, keyEnd, "data", "d")) {
+                message.dataStart = i + 1;
+                message.dataEnd = end;
+                message.dataEscaped = escaped;
+                message.dataType = InboundMessage.DataType.STRING;
+            }
+            return end + 1;
+        }
+
+        InboundMessage.DataType type;
+        if (c == '[' || c == '{') {
+            end = skipContainer(frame, i);
+            type = c == '[' ? InboundMessage.DataType.ARRAY : InboundMessage.DataType.OBJECT;
+        } else {
+            end = skipLiteral(frame, i);
+            if (end == i) {
+                throw malformed(frame, i, "unexpected character '" + c + "'");
+            }
+            if (c == 'n') {
+                type = InboundMessage.DataType.NULL;
+            } else if (c == 't' || c == 'f') {
+                type = InboundMessage.DataType.BOOLEAN;
+            } else {
+                type = InboundMessage.DataType.NUMBER;
+            }
+        }
+
+        if (isKey(frame, keyStart, keyEnd, "data", "d")) {
+            message.dataStart = i;
+            message.dataEnd = end;
+            message.dataType = type;
+        } else if (isKey(frame, keyStart, keyEnd, "apiVersion", "v") && type == InboundMessage.DataType.NUMBER) {
+            message.apiVersion = parseInt(frame, i, end);
+        }
+        return end;
+    }
+
+    private static boolean isKey(String frame, int keyStart, int keyEnd, String key, String compactKey) {
+        return isKey(frame, keyStart, keyEnd, key) || isKey(frame, keyStart, keyEnd, compactKey);
+    }
+
+    private static boolean isKey(String frame, int keyStart, int keyEnd, String key) {
+        return keyEnd - keyStart == key.length() && frame.regionMatches(keyStart, key, 0, key.length());
+    }
+
+    /** Returns the index of the closing quote of the string that opens at {@code i}. */
+    static int skipString(String frame, int i) {
+        int length = frame.length();
+        for (int j = i + 1; j < length; j++) {
+            char c = frame.charAt(j);
+            if (c == '\\') {
+                j++;
+            } else if (c == '"') {
+                return j;
+            }
+        }
+        throw malformed(frame, i, "unterminated string");
+    }
+
+    /** Returns the index after the array or object that opens at {@code i}. */
+    static int skipContainer(String frame, int i) {
+        int depth = 0;
+        int length = frame.length();
+        for (int j = i; j < length; j++) {
+            char c = frame.charAt(j);
+            if (c == '"') {
+                j = skipString(frame, j);
+            } else if (c == '[' || c == '{') {
+                depth++;
+            } else if (c == ']' || c == '}') {
+                if (--depth == 0) {
+                    return j + 1;
+                }
+            }
+        }
+        throw malformed(frame, i, "unterminated array or object");
+    }
+
+    private static int skipLiteral(String frame, int i) {
+        int length = frame.length();
+        int j = i;
+        while (j < length) {
+            char c = frame.charAt(j);
+            if (c == ',' || c == '}' || c == ']' || Character.isWhitespace(c)) {
+                break;
+            }
+            j++;
+        }
+        return j;
+    }
+
+    static int skipWhitespace(String frame, int i) {
+        int length = frame.length();
+        while (i < length && Character.isWhitespace(frame.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int parseInt(String frame, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = frame.charAt(i);
+            if (c < '0' || c > '9') {
+                return 0;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static void expect(String frame, int i, char expected) {
+        if (i >= frame.length() || frame.charAt(i) != expected) {
+            throw malformed(frame, i, "expected '" + expected + "'");
+        }
+    }
+
+    private static IllegalArgumentException malformed(String frame, int index, String reason) {
+        return new IllegalArgumentException("Malformed frame at offset " + index + " of " + frame.length() + ": " + reason);
+    }
+
+    /** Resolves the JSON escape sequences in {@code source[start, end)}. */
+    static String unescape(String source, int start, int end) {
+        StringBuilder sb = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            char c = source.charAt(i);
+            if (c != '\\' || i + 1 >= end) {
+                sb.append(c);
+                continue;
+            }
+            char escape = source.charAt(++i);
+            switch (escape) {
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'u':
+                    if (i + 4 >= end) {
+                        throw new IllegalArgumentException("Truncated unicode escape at offset " + i);
+                    }
+                    sb.append((char) Integer.parseInt(source, i + 1, i + 5, 16));
+                    i += 4;
+                    break;
+                default:
+                    // Covers \" \\ \/ and, leniently, any other escaped character.
+                    sb.append(escape);
+                    break;
+            }
+        }
+        return sb.toString();
+    }
+}
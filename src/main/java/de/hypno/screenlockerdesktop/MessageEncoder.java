@@ -0,0 +1,201 @@
+package de.hypno.screenlockerdesktop;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes the {@code {target, cmd, data, apiVersion}} envelope straight into a reusable
+ * UTF-8 buffer.
+ * <p>
+ * In compact mode it writes the apiVersion 3 envelope instead, {@code {t, c, d, v}} with
+ * the command's short code, which is only used on connections that negotiated the
+ * {@value #COMPACT_PROTOCOL} subprotocol.
+ * <p>
+ * Strings are JSON-escaped while they are written: quotes, backslashes, all control
+ * characters, U+2028/U+2029 and unpaired surrogates are emitted as escape sequences,
+ * everything else as UTF-8. No intermediate Strings are built for String, Boolean,
+ * Integer or Long data. An encoder is not thread-safe; callers must serialize access
+ * and finish with the returned buffer before the next call.
+ */
+public final class MessageEncoder {
+
+    /** The WebSocket subprotocol under which both sides speak the compact envelope. */
+    public static final String COMPACT_PROTOCOL = "hypno.v3";
+
+    private static final int INITIAL_CAPACITY = 256;
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+    private boolean compact = false;
+
+    public void setCompact(boolean compact) {
+        this.compact = compact;
+    }
+
+    public boolean isCompact() {
+        return compact;
+    }
+
+    /**
+     * Encodes one envelope. The returned buffer is ready for reading and stays valid
+     * until the next call to {@code encode}.
+     */
+    public ByteBuffer encode(String target, String cmd, Object data) {
+        buffer.clear();
+        if (compact) {
+            Command command = Command.lookup(cmd);
+            writeAscii("{\"t\":");
+            writeString(target);
+            writeAscii(",\"c\":");
+            writeString(command == Command.UNKNOWN ? cmd : command.shortCode());
+            writeAscii(",\"d\":");
+            writeValue(data);
+            writeAscii(",\"v\":3}");
+            buffer.flip();
+            return buffer;
+        }
+        writeAscii("{\"target\":");
+        writeString(target);
+        writeAscii(",\"cmd\":");
+        writeString(cmd);
+        writeAscii(",\"data\":");
+        writeValue(data);
+        writeAscii(",\"apiVersion\":2}");
+        buffer.flip();
+        return buffer;
+    }
+
+    private void writeValue(Object data) {
+        if (data == null) {
+            writeAscii("null");
+        } else if (data instanceof String) {
+            writeString((String) data);
+        } else if (data instanceof Boolean) {
+            writeAscii((Boolean) data ? "true" : "false");
+        } else if (data instanceof Integer || data instanceof Long) {
+            writeLong(((Number) data).longValue());
+        } else {
+            // Other types are written as raw JSON, as before.
+            String raw = data.toString();
+            for (int i = 0; i < raw.length(); i++) {
+                i = writeChar(raw, i);
+            }
+        }
+    }
+
+    private void writeString(String value) {
+        if (value == null) {
+            writeAscii("null");
+            return;
+        }
+        ensureCapacity(value.length() + 2);
+        buffer.put((byte) '"');
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': writeEscape('"'); break;
+                case '\\': writeEscape('\\'); break;
+                case '\b': writeEscape('b'); break;
+                case '\f': writeEscape('f'); break;
+                case '\n': writeEscape('n'); break;
+                case '\r': writeEscape('r'); break;
+                case '\t': writeEscape('t'); break;
+                default:
+                    if (c < 0x20 || c == 0x2028 || c == 0x2029) {
+                        writeUnicodeEscape(c);
+                    } else {
+                        i = writeChar(value, i);
+                    }
+                    break;
+            }
+        }
+        ensureCapacity(1);
+        buffer.put((byte) '"');
+    }
+
+    /** Writes the character at {@code i} as UTF-8 and returns the index of the last char consumed. */
+    private int writeChar(String value, int i) {
+        char c = value.charAt(i);
+        if (c < 0x80) {
+            ensureCapacity(1);
+            buffer.put((byte) c);
+        } else if (c < 0x800) {
+            ensureCapacity(2);
+            buffer.put((byte) (0xC0 | (c >> 6)));
+            buffer.put((byte) (0x80 | (c & 0x3F)));
+        } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                && Character.isLowSurrogate(value.charAt(i + 1))) {
+            int codePoint = Character.toCodePoint(c, value.charAt(i + 1));
+            ensureCapacity(4);
+            buffer.put((byte) (0xF0 | (codePoint >> 18)));
+            buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+            buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+            buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            return i + 1;
+        } else if (Character.isSurrogate(c)) {
+            // An unpaired surrogate cannot be encoded as UTF-8 and would make the
+            // frame invalid, so send it as an escape instead.
+            writeUnicodeEscape(c);
+        } else {
+            ensureCapacity(3);
+            buffer.put((byte) (0xE0 | (c >> 12)));
+            buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+            buffer.put((byte) (0x80 | (c & 0x3F)));
+        }
+        return i;
+    }
+
+    private void writeEscape(char c) {
+        ensureCapacity(2);
+        buffer.put((byte) '\\');
+        buffer.put((byte) c);
+    }
+
+    private void writeUnicodeEscape(char c) {
+        ensureCapacity(6);
+        buffer.put((byte) '\\');
+        buffer.put((byte) 'u');
+        buffer.put(HEX[(c >> 12) & 0xF]);
+        buffer.put(HEX[(c >> 8) & 0xF]);
+        buffer.put(HEX[(c >> 4) & 0xF]);
+        buffer.put(HEX[c & 0xF]);
+    }
+
+    private void writeAscii(String ascii) {
+        int length = ascii.length();
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++) {
+            buffer.put((byte) ascii.charAt(i));
+        }
+    }
+
+    private void writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            writeAscii("-9223372036854775808");
+            return;
+        }
+        ensureCapacity(20);
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        long divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            buffer.put((byte) ('0' + (value / divisor) % 10));
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        if (buffer.remaining() < extra) {
+            int required = buffer.position() + extra;
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(required, buffer.capacity() * 2));
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+    }
+}
@@ -0,0 +1,363 @@
+package de.hypno.screenlockerdesktop;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Process-wide counters, gauges and latency histograms.
+ * <p>
+ * Recording is a single {@link LongAdder} or histogram update and never allocates, so
+ * it is safe on the WebSocket and FX threads. {@link #register()} exposes everything as
+ * a {@link MetricsMXBean}; if {@code hypno.metrics.dumpFile} is set, a plain-text report
+ * is also written to that file when the JVM exits.
+ */
+public final class Metrics {
+
+    public static final String OBJECT_NAME = "de.hypno.screenlockerdesktop:type=Metrics";
+
+    private static final String DUMP_FILE = System.getProperty("hypno.metrics.dumpFile");
+    private static final Log LOG = Log.get(Metrics.class);
+
+    private static final Command[] COMMANDS = Command.values();
+    private static final LongAdder[] FRAMES_IN = adders(COMMANDS.length);
+    private static final LongAdder[] FRAMES_OUT = adders(COMMANDS.length);
+    private static final LongAdder BYTES_IN = new LongAdder();
+    private static final LongAdder BYTES_OUT = new LongAdder();
+    private static final LongAdder PARSE_FAILURES = new LongAdder();
+    private static final LongAdder RECONNECT_ATTEMPTS = new LongAdder();
+    private static final LongAdder HEARTBEAT_TIMEOUTS = new LongAdder();
+    private static final LongAdder OUTBOX_EXPIRED = new LongAdder();
+    private static final LongAdder OUTBOX_DROPPED = new LongAdder();
+    private static final LongAdder INBOUND_DROPPED = new LongAdder();
+    private static final LongAdder UI_BATCHES = new LongAdder();
+    private static final LongAdder CHAT_DROPPED = new LongAdder();
+
+    public static final LatencyHistogram AUTH_ROUND_TRIP = new LatencyHistogram();
+    public static final LatencyHistogram LOCK_TO_SHOWN = new LatencyHistogram();
+    public static final LatencyHistogram UNLOCK_TO_CLOSED = new LatencyHistogram();
+    public static final LatencyHistogram MUTE = new LatencyHistogram();
+    public static final LatencyHistogram UNMUTE = new LatencyHistogram();
+    public static final LatencyHistogram HEARTBEAT_RTT = new LatencyHistogram();
+    public static final LatencyHistogram SCREEN_CHANGE = new LatencyHistogram();
+
+    // Guarded by Metrics.class.
+    private static long connectedSinceNanos = -1;
+    private static long closedConnectionsNanos = 0;
+
+    private static volatile int overlayStages = 0;
+    private static volatile int outboxPending = 0;
+    private static boolean registered = false;
+
+    private Metrics() {
+    }
+
+    private static LongAdder[] adders(int size) {
+        LongAdder[] adders = new LongAdder[size];
+        for (int i = 0; i < size; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    public static void frameIn(Command command, int length) {
+        FRAMES_IN[command.ordinal()].increment();
+        BYTES_IN.add(length);
+    }
+
+    public static void frameOut(Command command, int bytes) {
+        FRAMES_OUT[command.ordinal()].increment();
+        BYTES_OUT.add(bytes);
+    }
+
+    public static void parseFailure() {
+        PARSE_FAILURES.increment();
+    }
+
+    public static void reconnectAttempt() {
+        RECONNECT_ATTEMPTS.increment();
+    }
+
+    public static void heartbeatTimeout() {
+        HEARTBEAT_TIMEOUTS.increment();
+    }
+
+    public static void outboxExpired() {
+        OUTBOX_EXPIRED.increment();
+    }
+
+    public static void outboxDropped() {
+        OUTBOX_DROPPED.increment();
+    }
+
+    public static void inboundDropped() {
+        INBOUND_DROPPED.increment();
+    }
+
+    public static void uiBatch() {
+        UI_BATCHES.increment();
+    }
+
+    public static void chatDropped() {
+        CHAT_DROPPED.increment();
+    }
+
+    public static void setOutboxPending(int count) {
+        outboxPending = count;
+    }
+
+    public static synchronized void connectionOpened() {
+        if (connectedSinceNanos < 0) {
+            connectedSinceNanos = System.nanoTime();
+        }
+    }
+
+    public static synchronized void connectionClosed() {
+        if (connectedSinceNanos >= 0) {
+            closedConnectionsNanos += System.nanoTime() - connectedSinceNanos;
+            connectedSinceNanos = -1;
+        }
+    }
+
+    public static void setOverlayStages(int count) {
+        overlayStages = count;
+    }
+
+    /**
+     * Registers the MXBean with the platform MBean server and, if configured, the exit
+     * dump. Calling it again does nothing.
+     */
+    public static synchronized void register() {
+        if (registered) {
+            return;
+        }
+        registered = true;
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new View(), new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            LOG.warn("Could not register metrics MXBean: {}", e.getMessage());
+        }
+        if (DUMP_FILE != null && !DUMP_FILE.isEmpty()) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> dump(Paths.get(DUMP_FILE)), "MetricsDump"));
+        }
+    }
+
+    /** Writes {@link #report()} to {@code file}, replacing its contents. */
+    public static void dump(Path file) {
+        try {
+            Files.write(file, report().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            LOG.warn("Could not write metrics to {}: {}", file, e.getMessage());
+        }
+    }
+
+    /** A human-readable summary of every metric. */
+    public static String report() {
+        View view = new View();
+        StringBuilder out = new StringBuilder();
+        String nl = System.lineSeparator();
+        out.append("# hypno screen locker metrics, ").append(Instant.now()).append(nl);
+        out.append("framesIn=").append(view.getFramesIn()).append(nl);
+        out.append("framesOut=").append(view.getFramesOut()).append(nl);
+        out.append("bytesIn=").append(view.getBytesIn()).append(nl);
+        out.append("bytesOut=").append(view.getBytesOut()).append(nl);
+        out.append("parseFailures=").append(view.getParseFailures()).append(nl);
+        out.append("reconnectAttempts=").append(view.getReconnectAttempts()).append(nl);
+        out.append("heartbeatTimeouts=").append(view.getHeartbeatTimeouts()).append(nl);
+        out.append("outboxPending=").append(view.getOutboxPending()).append(nl);
+        out.append("outboxExpired=").append(view.getOutboxExpired()).append(nl);
+        out.append("outboxDropped=").append(view.getOutboxDropped()).append(nl);
+        out.append("inboundDropped=").append(view.getInboundDropped()).append(nl);
+        out.append("uiBatches=").append(view.getUiBatches()).append(nl);
+        out.append("chatDropped=").append(view.getChatDropped()).append(nl);
+        out.append("connected=").append(view.isConnected()).append(nl);
+        out.append("connectionUptimeMillis=").append(view.getConnectionUptimeMillis()).append(nl);
+        out.append("totalConnectedMillis=").append(view.getTotalConnectedMillis()).append(nl);
+        out.append("authRoundTrip: ").append(view.getAuthRoundTrip()).append(nl);
+        out.append("lockToShown: ").append(view.getLockToShown()).append(nl);
+        out.append("unlockToClosed: ").append(view.getUnlockToClosed()).append(nl);
+        out.append("mute: ").append(view.getMute()).append(nl);
+        out.append("unmute: ").append(view.getUnmute()).append(nl);
+        out.append("heartbeatRtt: ").append(view.getHeartbeatRtt()).append(nl);
+        out.append("screenChange: ").append(view.getScreenChange()).append(nl);
+        out.append("overlayStages=").append(view.getOverlayStages()).append(nl);
+        out.append("decodedImageBytes=").append(view.getDecodedImageBytes()).append(nl);
+        out.append("timeToWindowMillis=").append(view.getTimeToWindowMillis()).append(nl);
+        out.append("timeToAuthenticatedMillis=").append(view.getTimeToAuthenticatedMillis()).append(nl);
+        out.append("droppedLogEvents=").append(view.getDroppedLogEvents()).append(nl);
+        return out.toString();
+    }
+
+    private static Map<String, Long> perCommand(LongAdder[] adders) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Command command : COMMANDS) {
+            long count = adders[command.ordinal()].sum();
+            if (count > 0) {
+                counts.put(command == Command.UNKNOWN ? "unknown" : command.wireName(), count);
+            }
+        }
+        return counts;
+    }
+
+    private static final class View implements MetricsMXBean {
+
+        @Override
+        public Map<String, Long> getFramesIn() {
+            return perCommand(FRAMES_IN);
+        }
+
+        @Override
+        public Map<String, Long> getFramesOut() {
+            return perCommand(FRAMES_OUT);
+        }
+
+        @Override
+        public long getBytesIn() {
+            return BYTES_IN.sum();
+        }
+
+        @Override
+        public long getBytesOut() {
+            return BYTES_OUT.sum();
+        }
+
+        @Override
+        public long getParseFailures() {
+            return PARSE_FAILURES.sum();
+        }
+
+        @Override
+        public long getReconnectAttempts() {
+            return RECONNECT_ATTEMPTS.sum();
+        }
+
+        @Override
+        public long getHeartbeatTimeouts() {
+            return HEARTBEAT_TIMEOUTS.sum();
+        }
+
+        @Override
+        public int getOutboxPending() {
+            return outboxPending;
+        }
+
+        @Override
+        public long getOutboxExpired() {
+            return OUTBOX_EXPIRED.sum();
+        }
+
+        @Override
+        public long getOutboxDropped() {
+            return OUTBOX_DROPPED.sum();
+        }
+
+        @Override
+        public long getInboundDropped() {
+            return INBOUND_DROPPED.sum();
+        }
+
+        @Override
+        public long getUiBatches() {
+            return UI_BATCHES.sum();
+        }
+
+        @Override
+        public long getChatDropped() {
+            return CHAT_DROPPED.sum();
+        }
+
+        @Override
+        public boolean isConnected() {
+            synchronized (Metrics.class) {
+                return connectedSinceNanos >= 0;
+            }
+        }
+
+        @Override
+        public long getConnectionUptimeMillis() {
+            synchronized (Metrics.class) {
+                return connectedSinceNanos < 0 ? 0 : (System.nanoTime() - connectedSinceNanos) / 1_000_000;
+            }
+        }
+
+        @Override
+        public long getTotalConnectedMillis() {
+            synchronized (Metrics.class) {
+                long total = closedConnectionsNanos;
+                if (connectedSinceNanos >= 0) {
+                    total += System.nanoTime() - connectedSinceNanos;
+                }
+                return total / 1_000_000;
+            }
+        }
+
+        @Override
+        public LatencyHistogram.Snapshot getAuthRoundTrip() {
+            return AUTH_ROUND_TRIP.snapshot();
+        }
+
+        @Override
+        public LatencyHistogram.Snapshot getLockToShown() {
+            return LOCK_TO_SHOWN.snapshot();
+        }
+
+        @Override
+        public LatencyHistogram.Snapshot getUnlockToClosed() {
+            return UNLOCK_TO_CLOSED.snapshot();
+        }
+
+        @Override
+        public LatencyHistogram.Snapshot getMute() {
+            return MUTE.snapshot();
+        }
+
+        @Override
+        public LatencyHistogram.Snapshot getUnmute() {
+            return UNMUTE.snapshot();
+        }
+
+        @Override
+        public LatencyHistogram.Snapshot getHeartbeatRtt() {
+            return HEARTBEAT_RTT.snapshot();
+        }
+
+        @Override
+        public LatencyHistogram.Snapshot getScreenChange() {
+            return SCREEN_CHANGE.snapshot();
+        }
+
+        @Override
+        public int getOverlayStages() {
+            return overlayStages;
+        }
+
+        @Override
+        public long getDecodedImageBytes() {
+            return ImageCache.getDecodedBytes();
+        }
+
+        @Override
+        public long getTimeToWindowMillis() {
+            return StartupTimeline.get(StartupTimeline.Mark.WINDOW_SHOWN);
+        }
+
+        @Override
+        public long getTimeToAuthenticatedMillis() {
+            return StartupTimeline.get(StartupTimeline.Mark.AUTHENTICATED);
+        }
+
+        @Override
+        public long getDroppedLogEvents() {
+            return Log.getDroppedCount();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package de.hypno.screenlockerdesktop;
+
+import java.util.Map;
+
+/**
+ * Management view of {@link Metrics}, registered as
+ * {@code de.hypno.screenlockerdesktop:type=Metrics}. Open it with JConsole or
+ * VisualVM when a user reports that locking or unlocking was slow.
+ */
+public interface MetricsMXBean {
+
+    /** Frames received per command wire name; unknown commands are counted under "unknown". */
+    Map<String, Long> getFramesIn();
+
+    /** Frames sent per command wire name. */
+    Map<String, Long> getFramesOut();
+
+    /** Size of received text frames, counted in characters. */
+    long getBytesIn();
+
+    /** Size of sent frames in UTF-8 bytes. */
+    long getBytesOut();
+
+    long getParseFailures();
+
+    long getReconnectAttempts();
+
+    /** Connections dropped because the server stopped answering heartbeats. */
+    long getHeartbeatTimeouts();
+
+    /** Frames waiting in the outbox or in flight, in memory and journaled. */
+    int getOutboxPending();
+
+    /** Queued frames discarded because they expired before they could be sent. */
+    long getOutboxExpired();
+
+    /** Frames dropped because the outbox and its journal were full. */
+    long getOutboxDropped();
+
+    /** Inbound frames dropped because the dispatcher queue stayed full, see {@link InboundDispatcher}. */
+    long getInboundDropped();
+
+    /** UI update tasks run for inbound frames; far fewer than frames under load. */
+    long getUiBatches();
+
+    /** Chat messages dropped because the overlay's queue was full, see {@link ChatScheduler}. */
+    long getChatDropped();
+
+    boolean isConnected();
+
+    /** Time since the current connection was opened, or 0 when disconnected. */
+    long getConnectionUptimeMillis();
+
+    /** Total time connected since the application started, including the current connection. */
+    long getTotalConnectedMillis();
+
+    LatencyHistogram.Snapshot getAuthRoundTrip();
+
+    LatencyHistogram.Snapshot getLockToShown();
+
+    LatencyHistogram.Snapshot getUnlockToClosed();
+
+    LatencyHistogram.Snapshot getMute();
+
+    LatencyHistogram.Snapshot getUnmute();
+
+    /** Round trip of heartbeat pings. */
+    LatencyHistogram.Snapshot getHeartbeatRtt();
+
+    /** Time the overlays took to follow a change of the screens, e.g. a monitor plugged in. */
+    LatencyHistogram.Snapshot getScreenChange();
+
+    /** Overlay stages currently alive, shown or pre-built. */
+    int getOverlayStages();
+
+    /** Estimated heap held by decoded overlay images, see {@link ImageCache#getDecodedBytes()}. */
+    long getDecodedImageBytes();
+
+    /** Time from process start until the settings window was shown, or -1. */
+    long getTimeToWindowMillis();
+
+    /** Time from process start until the first successful auth, or -1. */
+    long getTimeToAuthenticatedMillis();
+
+    long getDroppedLogEvents();
+}
@@ -0,0 +1,382 @@
+package de.hypno.screenlockerdesktop;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Holds outgoing frames that must not be lost while the connection is down.
+ * <p>
+ * Frames wait in a bounded in-memory queue ({@code hypno.outbox.capacity}, 256 by
+ * default). Once it is full, newer commands are appended to a memory-mapped journal
+ * ({@code hypno.outbox.journal}, {@code ~/.screenlocker/outbox.journal}, of
+ * {@code hypno.outbox.journalBytes}, 1 MiB by default) and read back in order as
+ * memory frees up. Only when the journal is full too is a command dropped.
+ * <p>
+ * Typed {@code text} may hold a password, so it never goes to the journal: when memory
+ * is full, the oldest waiting text makes room for the new one, and if there is none,
+ * the new text is dropped. Text therefore stays in memory ahead of journaled commands.
+ * <p>
+ * After a successful auth, {@link #flush} sends the waiting frames in order. A sent
+ * frame stays in flight until the server answers a heartbeat ping sent after it, which
+ * proves it arrived; {@link #rewind()} puts unanswered frames back in front of the
+ * queue when the connection drops, so delivery is at least once. Without a heartbeat
+ * a frame counts as delivered once sent. The journal's space is reused as the
+ * acknowledged frames make room for it to be read back.
+ * <p>
+ * Which frames are kept depends on the command: {@code unlock}, {@code add_ctrl} and
+ * {@code remove_ctrl} never expire, typed {@code text} expires after
+ * {@code hypno.outbox.textTtlMs} (30000 ms by default), and anything else is only sent
+ * while connected, since it is repeated after every auth anyway.
+ */
+public class Outbox {
+
+    private static final int CAPACITY = Integer.getInteger("hypno.outbox.capacity", 256);
+    private static final int JOURNAL_BYTES = Integer.getInteger("hypno.outbox.journalBytes", 1 << 20);
+    private static final long TEXT_TTL_MILLIS = Long.getLong("hypno.outbox.textTtlMs", 30000);
+    private static final Path JOURNAL_FILE = Paths.get(System.getProperty("hypno.outbox.journal",
+            Paths.get(System.getProperty("user.home"), ".screenlocker", "outbox.journal").toString()));
+    private static final long NEVER = Long.MAX_VALUE;
+    private static final Log LOG = Log.get(Outbox.class);
+
+    /** Sends one frame and returns whether it went out, i.e. the connection was open. */
+    public interface Sender {
+        boolean send(String target, String cmd, String data);
+    }
+
+    private static final class Entry {
+        final long seq;
+        final long deadlineMillis;
+        final String target;
+        final String cmd;
+        final String data;
+
+        Entry(long seq, long deadlineMillis, String target, String cmd, String data) {
+            this.seq = seq;
+            this.deadlineMillis = deadlineMillis;
+            this.target = target;
+            this.cmd = cmd;
+            this.data = data;
+        }
+    }
+
+    private final int capacity;
+    private final int journalBytes;
+    private final boolean ackOnSend;
+    // Guarded by "this"; each account gets its own file, see useJournalFor.
+    private Path journalFile;
+
+    // All guarded by "this". Memory holds the oldest frames: in flight first, then
+    // pending; the journal holds the newer ones in order behind them.
+    private final ArrayDeque<Entry> inFlight = new ArrayDeque<>();
+    private final ArrayDeque<Entry> pending = new ArrayDeque<>();
+    private MappedByteBuffer journal;
+    private boolean journalFailed = false;
+    private int readPos = 0;
+    private int writePos = 0;
+    private int spilled = 0;
+    private long nextSeq = 1;
+    // Last frame sent before the outstanding ping, or -1 if no ping is outstanding.
+    private long pingMark = -1;
+
+    /** @param ackOnSend count frames as delivered once sent, for when there is no heartbeat */
+    public Outbox(boolean ackOnSend) {
+        this(CAPACITY, JOURNAL_BYTES, JOURNAL_FILE, ackOnSend);
+    }
+
+    public Outbox(int capacity, int journalBytes, Path journalFile, boolean ackOnSend) {
+        this.capacity = capacity;
+        this.journalBytes = journalBytes;
+        this.journalFile = journalFile;
+        this.ackOnSend = ackOnSend;
+    }
+
+    /**
+     * Switches to the journal of {@code account}, so sessions of different accounts
+     * never share a file. Call it while the outbox is empty.
+     */
+    public synchronized void useJournalFor(String account) {
+        String name = JOURNAL_FILE.getFileName().toString().replaceFirst("\\.journal$", "");
+        Path file = journalFile.resolveSibling(name + "-" + account.replaceAll("[^A-Za-z0-9._-]", "_") + ".journal");
+        if (!file.equals(journalFile)) {
+            journalFile = file;
+            journal = null;
+            journalFailed = false;
+        }
+    }
+
+    /** Whether frames of this command are kept across disconnects. */
+    public static boolean accepts(Command command) {
+        return ttlMillis(command) > 0;
+    }
+
+    private static long ttlMillis(Command command) {
+        switch (command) {
+            case UNLOCK:
+            case ADD_CTRL:
+            case REMOVE_CTRL:
+                return NEVER;
+            case TEXT:
+                return TEXT_TTL_MILLIS;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Queues a frame behind everything already waiting.
+     *
+     * @return false if the frame was dropped because memory and journal are full, or,
+     *         for text, because memory is full of frames that never expire
+     */
+    public synchronized boolean offer(String target, String cmd, String data) {
+        long ttl = ttlMillis(Command.lookup(cmd));
+        long deadline = ttl == NEVER ? NEVER : System.currentTimeMillis() + ttl;
+        Entry entry = new Entry(nextSeq++, deadline, target, cmd, data);
+        if (inMemory() >= capacity) {
+            purgeExpired();
+        }
+        boolean queued;
+        if (deadline != NEVER) {
+            queued = inMemory() < capacity || dropOldestExpiring();
+            if (queued) {
+                pending.addLast(entry);
+            }
+        } else if (spilled == 0 && inMemory() < capacity) {
+            pending.addLast(entry);
+            queued = true;
+        } else {
+            queued = spill(entry);
+        }
+        if (!queued) {
+            LOG.warn("Outbox full, dropping {} to {}", cmd, target);
+            Metrics.outboxDropped();
+        }
+        updateGauge();
+        return queued;
+    }
+
+    /** Sends waiting frames in order until the queue is empty or the sender fails. */
+    public synchronized void flush(Sender sender) {
+        long now = System.currentTimeMillis();
+        while (true) {
+            Entry entry = pending.peekFirst();
+            if (entry == null) {
+                // The rest is journaled; it is read back as acknowledgements make room.
+                refill();
+                if (pending.isEmpty()) {
+                    break;
+                }
+                continue;
+            }
+            if (entry.deadlineMillis < now) {
+                pending.pollFirst();
+                Metrics.outboxExpired();
+                continue;
+            }
+            if (!sender.send(entry.target, entry.cmd, entry.data)) {
+                break;
+            }
+            pending.pollFirst();
+            if (!ackOnSend) {
+                inFlight.addLast(entry);
+            }
+            refill();
+        }
+        updateGauge();
+    }
+
+    /** Called right before a heartbeat ping goes out; its pong acknowledges what was sent so far. */
+    public synchronized void markPing() {
+        Entry last = inFlight.peekLast();
+        pingMark = last == null ? -1 : last.seq;
+    }
+
+    /** Called when the pong to the last ping arrived. */
+    public synchronized void acknowledge() {
+        if (pingMark < 0) {
+            return;
+        }
+        while (!inFlight.isEmpty() && inFlight.peekFirst().seq <= pingMark) {
+            inFlight.pollFirst();
+        }
+        pingMark = -1;
+        refill();
+        updateGauge();
+    }
+
+    /** Puts unacknowledged frames back in front of the queue after the connection dropped. */
+    public synchronized void rewind() {
+        Iterator<Entry> newestFirst = inFlight.descendingIterator();
+        while (newestFirst.hasNext()) {
+            pending.addFirst(newestFirst.next());
+        }
+        inFlight.clear();
+        pingMark = -1;
+    }
+
+    /** Forgets every frame, e.g. when a different user logs in. */
+    public synchronized void clear() {
+        inFlight.clear();
+        pending.clear();
+        readPos = 0;
+        writePos = 0;
+        spilled = 0;
+        pingMark = -1;
+        updateGauge();
+    }
+
+    public synchronized int size() {
+        return inMemory() + spilled;
+    }
+
+    private int inMemory() {
+        return inFlight.size() + pending.size();
+    }
+
+    private void purgeExpired() {
+        long now = System.currentTimeMillis();
+        pending.removeIf(entry -> {
+            boolean expired = entry.deadlineMillis < now;
+            if (expired) {
+                Metrics.outboxExpired();
+            }
+            return expired;
+        });
+    }
+
+    /** Makes room in memory by dropping the oldest waiting frame that can expire. */
+    private boolean dropOldestExpiring() {
+        Iterator<Entry> oldestFirst = pending.iterator();
+        while (oldestFirst.hasNext()) {
+            if (oldestFirst.next().deadlineMillis != NEVER) {
+                oldestFirst.remove();
+                Metrics.outboxDropped();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void updateGauge() {
+        Metrics.setOutboxPending(inMemory() + spilled);
+    }
+
+    /** Moves journaled frames into memory while there is room. */
+    private void refill() {
+        while (spilled > 0 && inMemory() < capacity) {
+            pending.addLast(readEntry());
+            spilled--;
+        }
+        if (spilled == 0) {
+            readPos = 0;
+            writePos = 0;
+        }
+    }
+
+    // Journal records: int length, long seq, long deadline, then target, cmd and data as
+    // an int byte count (-1 for null) followed by UTF-8 bytes.
+
+    private boolean spill(Entry entry) {
+        if (journal == null && !openJournal()) {
+            return false;
+        }
+        byte[] target = utf8(entry.target);
+        byte[] cmd = utf8(entry.cmd);
+        byte[] data = utf8(entry.data);
+        int length = 4 + 8 + 8 + field(target) + field(cmd) + field(data);
+        if (writePos + length > journalBytes) {
+            compact();
+            if (writePos + length > journalBytes) {
+                return false;
+            }
+        }
+        ByteBuffer out = journal.duplicate();
+        out.position(writePos);
+        out.putInt(length).putLong(entry.seq).putLong(entry.deadlineMillis);
+        putField(out, target);
+        putField(out, cmd);
+        putField(out, data);
+        writePos += length;
+        spilled++;
+        return true;
+    }
+
+    private Entry readEntry() {
+        ByteBuffer in = journal.duplicate();
+        in.position(readPos);
+        int length = in.getInt();
+        long seq = in.getLong();
+        long deadline = in.getLong();
+        String target = getField(in);
+        String cmd = getField(in);
+        String data = getField(in);
+        readPos += length;
+        return new Entry(seq, deadline, target, cmd, data);
+    }
+
+    /** Moves the unread records to the start of the journal. */
+    private void compact() {
+        if (readPos == 0) {
+            return;
+        }
+        byte[] unread = new byte[writePos - readPos];
+        journal.get(readPos, unread);
+        journal.put(0, unread);
+        writePos -= readPos;
+        readPos = 0;
+    }
+
+    private boolean openJournal() {
+        if (journalFailed) {
+            return false;
+        }
+        try {
+            Files.createDirectories(journalFile.getParent());
+            // Frames from an earlier run belong to a session that is gone; start empty.
+            try (FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                journal = channel.map(FileChannel.MapMode.READ_WRITE, 0, journalBytes);
+            }
+            return true;
+        } catch (IOException e) {
+            journalFailed = true;
+            LOG.warn("Could not open the outbox journal {}: {}", journalFile, e.getMessage());
+            return false;
+        }
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int field(byte[] bytes) {
+        return 4 + (bytes == null ? 0 : bytes.length);
+    }
+
+    private static void putField(ByteBuffer out, byte[] bytes) {
+        if (bytes == null) {
+            out.putInt(-1);
+        } else {
+            out.putInt(bytes.length).put(bytes);
+        }
+    }
+
+    private static String getField(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
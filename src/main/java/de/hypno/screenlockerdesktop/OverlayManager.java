@@ -1,9 +1,9 @@
 package de.hypno.screenlockerdesktop;
 
-import javafx.animation.KeyFrame;
+import javafx.animation.AnimationTimer;
 import javafx.animation.PauseTransition;
-import javafx.animation.Timeline;
 import javafx.application.Platform;
+import javafx.collections.ListChangeListener;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.geometry.Rectangle2D;
@@ -12,9 +12,11 @@ import javafx.scene.control.Label;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.Pane;
 import javafx.scene.layout.StackPane;
 import javafx.scene.paint.Color;
+import javafx.scene.shape.Rectangle;
 import javafx.scene.text.Font;
 import javafx.stage.Modality;
 import javafx.stage.Screen;
@@ -22,235 +24,721 @@ import javafx.stage.Stage;
 import javafx.stage.StageStyle;
 import javafx.util.Duration;
 
-import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
+
+public class OverlayManager implements LockScreen {
+    private static final Log LOG = Log.get(OverlayManager.class);
+    // hypno.overlay.stages=perScreen: one opaque stage per screen instead of a single
+    // transparent stage over the bounding box of all screens, dead areas included.
+    private static final boolean PER_SCREEN_STAGES = "perScreen".equals(System.getProperty("hypno.overlay.stages"));
 
-public class OverlayManager {
     private final AudioManager audioManager = new AudioManager(); // ADD THIS LINE
-    private final List<Stage> overlayStages = new ArrayList<>();
-    private final List<Label> messageLabels = new ArrayList<>();
-    private final List<Label> clickHintLabels = new ArrayList<>();
-    private final List<Label> keystrokeDisplayLabels = new ArrayList<>();
-    private final StringBuilder keystrokeHistory = new StringBuilder();
-
-    private Timeline messageTimeline;
-    private boolean canHideMessageByKey = false;
-    private PauseTransition minDisplayTimer;
+    private final KeystrokeRing keystrokeHistory = new KeystrokeRing(80);
+    // Key presses only mark the history dirty; the labels are updated at most once per
+    // pulse, however many keys arrived since the last one.
+    private boolean keystrokeLabelsDirty = false;
+    private final AnimationTimer keystrokeRenderer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            stop();
+            keystrokeLabelsDirty = false;
+            if (activeOverlay == null) {
+                return;
+            }
+            String text = keystrokeHistory.toString();
+            for (Label ksLabel : activeOverlay.keystrokeDisplayLabels) {
+                ksLabel.setText(text);
+            }
+        }
+    };
+
+    // The overlay currently on screen, and one that is built and laid out but hidden,
+    // ready to be shown the moment a "lock" arrives.
+    private Overlay activeOverlay;
+    private Overlay prewarmedOverlay;
+    private boolean screenListenerInstalled = false;
+
+    // Accounts whose sessions currently hold a lock, in the order they locked, each
+    // with its session and the batcher that sends it what is typed. FX thread only.
+    private final Map<String, WebSocketManager> lockingSessions = new LinkedHashMap<>();
+    private final Map<String, KeystrokeBatcher> keystrokeBatchers = new HashMap<>();
+
+    private final ChatScheduler chat = new ChatScheduler(this::displayMessage, this::hideMessageOnly);
     // --- NEW: Timer to clear keystroke history after a period of inactivity ---
     private PauseTransition keystrokeClearTimer;
 
-    public void showLockOverlay(String currentUsername, String imageName, WebSocketManager webSocketManager) {
-        Platform.runLater(() -> {
-            if (!overlayStages.isEmpty()) {
-                return;
+    private volatile long lastLockLatencyNanos = -1;
+
+    /**
+     * The scene graphs and stages that cover all screens, together with the screen
+     * layout and image they were built for. The first stage is the one that takes focus.
+     */
+    private static final class Overlay {
+        final List<Stage> stages = new ArrayList<>();
+        final String imageName;
+        // The layout the overlay currently covers; updated when screens change.
+        List<Rectangle2D> screenBounds;
+        final List<ScreenPart> parts = new ArrayList<>();
+        final List<Label> messageLabels = new ArrayList<>();
+        final List<Label> clickHintLabels = new ArrayList<>();
+        final List<Label> keystrokeDisplayLabels = new ArrayList<>();
+        final List<Label> lockedByLabels = new ArrayList<>();
+        // The decoded image shared by every screen, or null for the procedural spiral.
+        Image gif;
+        ProceduralSpiral spiral;
+        FrameCpuProbe cpuProbe;
+        // The pane holding every screen's container, in the spanning mode only.
+        Pane spanningRoot;
+
+        Overlay(String imageName, List<Rectangle2D> screenBounds) {
+            this.imageName = imageName;
+            this.screenBounds = screenBounds;
+        }
+
+        Stage primaryStage() {
+            return stages.get(0);
+        }
+
+        void show() {
+            for (Stage stage : stages) {
+                stage.show();
             }
+            primaryStage().requestFocus();
+        }
 
-            // 1. Calculate the total virtual bounds of all screens combined
-            double minX = 0, minY = 0, maxX = 0, maxY = 0;
-            boolean firstScreen = true;
-            List<Screen> screens = Screen.getScreens();
-            for (Screen screen : screens) {
-                Rectangle2D bounds = screen.getVisualBounds();
-                if (firstScreen) {
-                    minX = bounds.getMinX();
-                    minY = bounds.getMinY();
-                    maxX = bounds.getMaxX();
-                    maxY = bounds.getMaxY();
-                    firstScreen = false;
-                } else {
-                    minX = Math.min(minX, bounds.getMinX());
-                    minY = Math.min(minY, bounds.getMinY());
-                    maxX = Math.max(maxX, bounds.getMaxX());
-                    maxY = Math.max(maxY, bounds.getMaxY());
+        void close() {
+            for (Stage stage : stages) {
+                stage.close();
+            }
+        }
+
+        boolean fits(String imageName, List<Rectangle2D> currentBounds) {
+            return this.imageName.equals(imageName) && screenBounds.equals(currentBounds);
+        }
+    }
+
+    /** What the overlay shows on one screen. */
+    private static final class ScreenPart {
+        Rectangle2D bounds;
+        final StackPane container = new StackPane();
+        ImageView imageView;
+        Label messageLabel;
+        Label clickHintLabel;
+        Label lockedByLabel;
+        Label keystrokeDisplayLabel;
+        // The screen's own stage, in the per-screen mode only.
+        Stage stage;
+
+        ScreenPart(Rectangle2D bounds) {
+            this.bounds = bounds;
+        }
+    }
+
+    /**
+     * Builds the overlay for {@code imageName} in the background so that a later lock
+     * only has to show it. The image is decoded off the FX thread; the stage is then
+     * built and laid out, but not shown, on the FX thread.
+     */
+    @Override
+    public void prewarmLockOverlay(String imageName) {
+        Thread thread = new Thread(() -> {
+            try {
+                if (!isProcedural(imageName)) {
+                    ImageCache.get(imagePathFor(imageName));
                 }
+            } catch (RuntimeException e) {
+                LOG.warn("Could not pre-decode overlay image: {}", e.getMessage());
+                return;
+            }
+            Platform.runLater(() -> {
+                installScreenListener();
+                List<Rectangle2D> bounds = currentScreenBounds();
+                if (activeOverlay != null || (prewarmedOverlay != null && prewarmedOverlay.fits(imageName, bounds))) {
+                    return;
+                }
+                prewarmedOverlay = buildOverlay(imageName, bounds);
+                updateStageGauge();
+            });
+        });
+        thread.setName("OverlayPrewarm");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void showLockOverlay(String currentUsername, String imageName, WebSocketManager webSocketManager,
+                                long receivedNanos) {
+        long requestedAt = receivedNanos >= 0 ? receivedNanos : System.nanoTime();
+        FxThread.run(() -> {
+            // Prewarming may have failed or never run; the overlay must follow screens anyway.
+            installScreenListener();
+            if (lockingSessions.put(currentUsername, webSocketManager) == null) {
+                keystrokeBatchers.put(currentUsername, new KeystrokeBatcher(webSocketManager, currentUsername));
+            }
+            if (activeOverlay != null) {
+                // Another session locked while the overlay is up; just name it too.
+                updateLockedByLabels();
+                return;
             }
-            double totalWidth = maxX - minX;
-            double totalHeight = maxY - minY;
 
-            // 2. Create a single root Pane to hold all screen elements
-            Pane root = new Pane();
-            root.setStyle("-fx-background-color: transparent;");
+            List<Rectangle2D> bounds = currentScreenBounds();
+            boolean prewarmed = prewarmedOverlay != null && prewarmedOverlay.fits(imageName, bounds);
+            Overlay overlay = prewarmed ? prewarmedOverlay : buildOverlay(imageName, bounds);
+            prewarmedOverlay = null;
+            activeOverlay = overlay;
+            updateStageGauge();
+            updateLockedByLabels();
 
             // --- NEW: Initialize the timer for clearing keystrokes ---
             keystrokeClearTimer = new PauseTransition(Duration.seconds(5));
             keystrokeClearTimer.setOnFinished(e -> clearKeystrokeHistory());
 
-            // 3. Create and position ImageViews and Labels for each screen
-            for (Screen screen : screens) {
-                Rectangle2D screenBounds = screen.getVisualBounds();
-                StackPane screenContainer = new StackPane();
-                screenContainer.setPrefSize(screenBounds.getWidth(), screenBounds.getHeight());
-                screenContainer.setLayoutX(screenBounds.getMinX() - minX);
-                screenContainer.setLayoutY(screenBounds.getMinY() - minY);
-
-                String imagePath = imageName.equals("Spiral 1") ? "spiral1.gif" : "spiral2.gif";
-                InputStream imageStream = getClass().getResourceAsStream(imagePath);
-                Objects.requireNonNull(imageStream, "Image resource not found: " + imagePath);
-                Image gif = new Image(imageStream);
-                ImageView imageView = new ImageView(gif);
-                imageView.setFitWidth(screenBounds.getWidth());
-                imageView.setFitHeight(screenBounds.getHeight());
-                imageView.setPreserveRatio(false);
-                imageView.setSmooth(true);
-
-                screenContainer.setStyle("-fx-background-color: black;");
-
-                Label messageLabel = new Label();
-                messageLabel.setFont(new Font("Arial", 48));
-                messageLabel.setTextFill(Color.WHITE);
-                messageLabel.setStyle("-fx-background-color: rgba(0, 0, 0, 0.5); -fx-padding: 10;");
-                messageLabel.setVisible(false);
-                messageLabels.add(messageLabel);
-
-                Label clickHintLabel = new Label("Click anywhere to focus");
-                clickHintLabel.setFont(new Font("Arial", 32));
-                clickHintLabel.setTextFill(Color.YELLOW);
-                clickHintLabel.setStyle("-fx-background-color: rgba(0, 0, 0, 0.6); -fx-padding: 15; -fx-border-radius: 10; -fx-background-radius: 10;");
-                // --- CHANGED: Now visible by default ---
-                clickHintLabel.setVisible(true);
-                clickHintLabels.add(clickHintLabel);
-                StackPane.setAlignment(clickHintLabel, Pos.CENTER);
-
-                Label keystrokeDisplayLabel = new Label();
-                keystrokeDisplayLabel.setFont(new Font("Monospaced", 20));
-                keystrokeDisplayLabel.setTextFill(Color.WHITE);
-                keystrokeDisplayLabel.setStyle("-fx-background-color: rgba(0, 0, 0, 0.5); -fx-padding: 5;");
-                keystrokeDisplayLabels.add(keystrokeDisplayLabel);
-                StackPane.setAlignment(keystrokeDisplayLabel, Pos.BOTTOM_CENTER);
-                keystrokeDisplayLabel.setPadding(new Insets(0, 0, 50, 0));
-
-
-                screenContainer.getChildren().addAll(imageView, messageLabel, clickHintLabel, keystrokeDisplayLabel);
-                root.getChildren().add(screenContainer);
+            // All scenes pulse together, so the first one stands for every screen.
+            Scene scene = overlay.primaryStage().getScene();
+            scene.addPostLayoutPulseListener(new Runnable() {
+                @Override
+                public void run() {
+                    // First pulse after show: the overlay is about to be rendered.
+                    scene.removePostLayoutPulseListener(this);
+                    lastLockLatencyNanos = System.nanoTime() - requestedAt;
+                    Metrics.LOCK_TO_SHOWN.record(lastLockLatencyNanos);
+                    LOG.info("Lock overlay first frame after {} ms (prewarmed: {})",
+                            lastLockLatencyNanos / 1_000_000, prewarmed);
+                }
+            });
+
+            overlay.show();
+            if (overlay.spiral != null) {
+                overlay.spiral.start();
+            }
+            if (overlay.cpuProbe != null) {
+                overlay.cpuProbe.start(scene);
+            }
+
+            // After we are sure the window is open, mute the audio
+            audioManager.mute();
+        });
+    }
+
+    /** Time from the last "lock" request to the first frame of the overlay, or -1. */
+    public long getLastLockLatencyNanos() {
+        return lastLockLatencyNanos;
+    }
+
+    private static boolean isProcedural(String imageName) {
+        return ProceduralSpiral.DISPLAY_NAME.equals(imageName);
+    }
+
+    private static String imagePathFor(String imageName) {
+        return "Spiral 1".equals(imageName) ? "spiral1.gif" : "spiral2.gif";
+    }
+
+    private static List<Rectangle2D> currentScreenBounds() {
+        List<Rectangle2D> bounds = new ArrayList<>();
+        for (Screen screen : Screen.getScreens()) {
+            bounds.add(screen.getVisualBounds());
+        }
+        return bounds;
+    }
+
+    /**
+     * Follows screen changes, such as a monitor plugged in or a resolution change, in
+     * the overlay on screen and in the pre-built one. Only the screens that changed are
+     * touched: a new screen gets a new part, a removed one loses its part, and a moved
+     * or resized one has its part resized; everything else stays as it is.
+     */
+    private void installScreenListener() {
+        if (screenListenerInstalled) {
+            return;
+        }
+        screenListenerInstalled = true;
+        Screen.getScreens().addListener((ListChangeListener<Screen>) change -> {
+            List<Rectangle2D> bounds = currentScreenBounds();
+            // Some platforms briefly report no screens while reconfiguring.
+            if (bounds.isEmpty()) {
+                return;
+            }
+            long started = System.nanoTime();
+            if (activeOverlay != null) {
+                adaptToScreens(activeOverlay, bounds, true);
+            }
+            if (prewarmedOverlay != null) {
+                adaptToScreens(prewarmedOverlay, bounds, false);
             }
+            Metrics.SCREEN_CHANGE.record(System.nanoTime() - started);
+            updateStageGauge();
+        });
+    }
 
-            // 4. Create a single scene and stage that spans all monitors
-            Scene scene = new Scene(root, totalWidth, totalHeight);
-            scene.setFill(Color.TRANSPARENT);
+    private Overlay buildOverlay(String imageName, List<Rectangle2D> screenBounds) {
+        Overlay overlay = new Overlay(imageName, screenBounds);
 
-            // --- NEW: Hide hint on mouse press ---
-            scene.setOnMousePressed(event -> hideClickHint());
+        // All screens share one decoded image from the process-wide cache, or one
+        // procedurally drawn spiral that is animated by rotating it.
+        if (isProcedural(imageName)) {
+            double maxWidth = 0, maxHeight = 0;
+            for (Rectangle2D bounds : screenBounds) {
+                maxWidth = Math.max(maxWidth, bounds.getWidth());
+                maxHeight = Math.max(maxHeight, bounds.getHeight());
+            }
+            overlay.spiral = new ProceduralSpiral(maxWidth, maxHeight);
+        } else {
+            overlay.gif = ImageCache.get(imagePathFor(imageName));
+        }
+        if (FrameCpuProbe.ENABLED) {
+            overlay.cpuProbe = new FrameCpuProbe((isProcedural(imageName) ? "procedural" : "gif")
+                    + (PER_SCREEN_STAGES ? "/perScreen" : "/spanning"));
+        }
 
-            // 5. Set the single key press handler on the single scene
-            scene.setOnKeyPressed(event -> {
-                // --- NEW: Hide the hint on the first keypress ---
-                hideClickHint();
+        if (PER_SCREEN_STAGES) {
+            buildPerScreenStages(overlay);
+        } else {
+            buildSpanningStage(overlay);
+        }
+        return overlay;
+    }
 
-                String keyText;
-                if (event.getText() != null && !event.getText().isEmpty()) {
-                    keyText = event.getText();
-                } else {
-                    keyText = "[" + event.getCode().toString() + "]";
-                }
+    /** One transparent stage over the bounding box of all screens. */
+    private void buildSpanningStage(Overlay overlay) {
+        // 1. Create a single root Pane to hold all screen elements
+        Pane root = new Pane();
+        root.setStyle("-fx-background-color: transparent;");
+        overlay.spanningRoot = root;
 
-                keystrokeHistory.append(keyText);
-                if (keystrokeHistory.length() > 80) {
-                    keystrokeHistory.delete(0, keystrokeHistory.length() - 80);
-                }
-                for (Label ksLabel : keystrokeDisplayLabels) {
-                    ksLabel.setText(keystrokeHistory.toString());
-                }
+        // 2. Create ImageViews and Labels for each screen
+        for (Rectangle2D bounds : overlay.screenBounds) {
+            root.getChildren().add(buildScreenPart(overlay, bounds).container);
+        }
 
-                // --- NEW: Restart the 5-second timer to clear history on every keystroke ---
-                keystrokeClearTimer.playFromStart();
+        // 3. Create a single scene and stage that spans all monitors
+        Scene scene = new Scene(root);
+        scene.setFill(Color.TRANSPARENT);
+        routeInput(scene);
 
-                if (event.getCode() == KeyCode.ESCAPE) {
-                    hideLockOverlay();
-                    webSocketManager.sendMessage(currentUsername, "unlock", null);
-                    webSocketManager.sendMessage(currentUsername, "text", "UNLOCK");
-                    event.consume();
-                    return;
-                }
+        Stage overlayStage = new Stage();
+        overlayStage.initStyle(StageStyle.UNDECORATED);
+        overlayStage.initStyle(StageStyle.TRANSPARENT);
+        overlayStage.setAlwaysOnTop(true);
+        overlayStage.initModality(Modality.APPLICATION_MODAL);
+        overlayStage.setScene(scene);
+        overlay.stages.add(overlayStage);
+
+        // 4. Position the screens in it and size it to cover them all
+        layoutSpanningStage(overlay);
+
+        // The focus property listener has been removed as it was not reliable.
+
+        // Resolve CSS and lay the scene out now, so showing it later is cheap.
+        root.applyCss();
+        root.layout();
+    }
+
+    /** Sizes the spanning stage to the bounding box of all screens and places each part in it. */
+    private static void layoutSpanningStage(Overlay overlay) {
+        double minX = 0, minY = 0, maxX = 0, maxY = 0;
+        boolean firstScreen = true;
+        for (ScreenPart part : overlay.parts) {
+            Rectangle2D bounds = part.bounds;
+            if (firstScreen) {
+                minX = bounds.getMinX();
+                minY = bounds.getMinY();
+                maxX = bounds.getMaxX();
+                maxY = bounds.getMaxY();
+                firstScreen = false;
+            } else {
+                minX = Math.min(minX, bounds.getMinX());
+                minY = Math.min(minY, bounds.getMinY());
+                maxX = Math.max(maxX, bounds.getMaxX());
+                maxY = Math.max(maxY, bounds.getMaxY());
+            }
+        }
+        for (ScreenPart part : overlay.parts) {
+            part.container.setPrefSize(part.bounds.getWidth(), part.bounds.getHeight());
+            part.container.setLayoutX(part.bounds.getMinX() - minX);
+            part.container.setLayoutY(part.bounds.getMinY() - minY);
+        }
+        Stage stage = overlay.primaryStage();
+        stage.setX(minX);
+        stage.setY(minY);
+        stage.setWidth(maxX - minX);
+        stage.setHeight(maxY - minY);
+    }
+
+    /**
+     * One opaque stage per screen, sized to it. The first is modal and the others are
+     * owned by it, so clicks on any screen still reach the overlay, and every scene
+     * sends its keys to the same handler.
+     */
+    private void buildPerScreenStages(Overlay overlay) {
+        for (Rectangle2D bounds : overlay.screenBounds) {
+            createScreenStage(overlay, buildScreenPart(overlay, bounds));
+        }
+    }
+
+    private void createScreenStage(Overlay overlay, ScreenPart part) {
+        Scene scene = new Scene(part.container, part.bounds.getWidth(), part.bounds.getHeight());
+        scene.setFill(Color.BLACK);
+        routeInput(scene);
+
+        Stage stage = new Stage();
+        stage.initStyle(StageStyle.UNDECORATED);
+        stage.setAlwaysOnTop(true);
+        if (overlay.stages.isEmpty()) {
+            stage.initModality(Modality.APPLICATION_MODAL);
+        } else {
+            stage.initOwner(overlay.primaryStage());
+        }
+        stage.setScene(scene);
+        part.stage = stage;
+        placeScreenStage(part);
+
+        part.container.applyCss();
+        part.container.layout();
+        overlay.stages.add(stage);
+    }
+
+    private static void placeScreenStage(ScreenPart part) {
+        part.stage.setX(part.bounds.getMinX());
+        part.stage.setY(part.bounds.getMinY());
+        part.stage.setWidth(part.bounds.getWidth());
+        part.stage.setHeight(part.bounds.getHeight());
+    }
+
+    private void routeInput(Scene scene) {
+        // --- NEW: Hide hint on mouse press ---
+        scene.setOnMousePressed(event -> hideClickHint());
+
+        // 5. Every scene sends its keys to the one handler
+        scene.setOnKeyPressed(this::handleKeyPressed);
+    }
 
-                String character = event.getText();
-                if (character != null && !character.isEmpty()) {
-                    webSocketManager.sendMessage(currentUsername, "text", character);
+    /** Builds the image and labels of one screen and adds them to the overlay. */
+    private ScreenPart buildScreenPart(Overlay overlay, Rectangle2D bounds) {
+        ScreenPart part = new ScreenPart(bounds);
+        StackPane screenContainer = part.container;
+
+        if (overlay.spiral != null) {
+            part.imageView = overlay.spiral.createView(bounds.getWidth(), bounds.getHeight());
+        } else {
+            part.imageView = new ImageView(overlay.gif);
+            part.imageView.setPreserveRatio(false);
+            part.imageView.setSmooth(true);
+        }
+        sizeScreenContents(overlay, part);
+
+        screenContainer.setStyle("-fx-background-color: black;");
+
+        Label messageLabel = new Label();
+        messageLabel.setFont(new Font("Arial", 48));
+        messageLabel.setTextFill(Color.WHITE);
+        messageLabel.setStyle("-fx-background-color: rgba(0, 0, 0, 0.5); -fx-padding: 10;");
+        messageLabel.setVisible(false);
+        part.messageLabel = messageLabel;
+
+        Label clickHintLabel = new Label("Click anywhere to focus");
+        clickHintLabel.setFont(new Font("Arial", 32));
+        clickHintLabel.setTextFill(Color.YELLOW);
+        clickHintLabel.setStyle("-fx-background-color: rgba(0, 0, 0, 0.6); -fx-padding: 15; -fx-border-radius: 10; -fx-background-radius: 10;");
+        // --- CHANGED: Now visible by default ---
+        clickHintLabel.setVisible(true);
+        part.clickHintLabel = clickHintLabel;
+        StackPane.setAlignment(clickHintLabel, Pos.CENTER);
+
+        Label lockedByLabel = new Label();
+        lockedByLabel.setFont(new Font("Arial", 16));
+        lockedByLabel.setTextFill(Color.WHITE);
+        lockedByLabel.setStyle("-fx-background-color: rgba(0, 0, 0, 0.5); -fx-padding: 5;");
+        part.lockedByLabel = lockedByLabel;
+        StackPane.setAlignment(lockedByLabel, Pos.TOP_CENTER);
+
+        Label keystrokeDisplayLabel = new Label();
+        keystrokeDisplayLabel.setFont(new Font("Monospaced", 20));
+        keystrokeDisplayLabel.setTextFill(Color.WHITE);
+        keystrokeDisplayLabel.setStyle("-fx-background-color: rgba(0, 0, 0, 0.5); -fx-padding: 5;");
+        part.keystrokeDisplayLabel = keystrokeDisplayLabel;
+        StackPane.setAlignment(keystrokeDisplayLabel, Pos.BOTTOM_CENTER);
+        keystrokeDisplayLabel.setPadding(new Insets(0, 0, 50, 0));
+
+        screenContainer.getChildren().addAll(part.imageView, messageLabel, clickHintLabel, keystrokeDisplayLabel, lockedByLabel);
+
+        overlay.parts.add(part);
+        overlay.messageLabels.add(messageLabel);
+        overlay.clickHintLabels.add(clickHintLabel);
+        overlay.lockedByLabels.add(lockedByLabel);
+        overlay.keystrokeDisplayLabels.add(keystrokeDisplayLabel);
+        return part;
+    }
+
+    /** Fits the image of a part to its screen. */
+    private static void sizeScreenContents(Overlay overlay, ScreenPart part) {
+        double width = part.bounds.getWidth();
+        double height = part.bounds.getHeight();
+        if (overlay.spiral != null) {
+            overlay.spiral.centerView(part.imageView, width, height);
+            part.container.setClip(new Rectangle(width, height));
+        } else {
+            part.imageView.setFitWidth(width);
+            part.imageView.setFitHeight(height);
+        }
+    }
+
+    /**
+     * Brings the overlay in line with {@code newBounds}. Parts whose screen is still
+     * there are left alone; parts whose screen changed or went away take over the
+     * changed or new screens in order, so a resolution change or a moved monitor only
+     * resizes one part. Only what is left over is removed or built. FX thread only.
+     */
+    private void adaptToScreens(Overlay overlay, List<Rectangle2D> newBounds, boolean showing) {
+        if (overlay.screenBounds.equals(newBounds)) {
+            return;
+        }
+        List<Rectangle2D> unmatched = new ArrayList<>(newBounds);
+        List<ScreenPart> stale = new ArrayList<>();
+        for (ScreenPart part : overlay.parts) {
+            if (!unmatched.remove(part.bounds)) {
+                stale.add(part);
+            }
+        }
+        int reused = Math.min(stale.size(), unmatched.size());
+        for (int i = 0; i < reused; i++) {
+            resizeScreenPart(overlay, stale.get(i), unmatched.get(i));
+        }
+
+        List<ScreenPart> removed = new ArrayList<>(stale.subList(reused, stale.size()));
+        ScreenPart first = overlay.parts.get(0);
+        if (PER_SCREEN_STAGES && removed.contains(first)) {
+            // The first stage owns the others and would take them along when closed, so
+            // it takes over a screen another part covers, and that part goes instead.
+            ScreenPart substitute = null;
+            for (ScreenPart part : overlay.parts) {
+                if (!stale.contains(part)) {
+                    substitute = part;
                 }
+            }
+            resizeScreenPart(overlay, first, substitute.bounds);
+            removed.set(removed.indexOf(first), substitute);
+        }
+        for (ScreenPart part : removed) {
+            removeScreenPart(overlay, part);
+        }
 
-                if (canHideMessageByKey) {
-                    hideMessageOnly();
+        ScreenPart template = overlay.parts.get(0);
+        for (Rectangle2D bounds : unmatched.subList(reused, unmatched.size())) {
+            ScreenPart part = buildScreenPart(overlay, bounds);
+            copyLabels(template, part);
+            if (PER_SCREEN_STAGES) {
+                createScreenStage(overlay, part);
+                if (showing) {
+                    part.stage.show();
                 }
-            });
+            } else {
+                overlay.spanningRoot.getChildren().add(part.container);
+            }
+        }
 
-            Stage overlayStage = new Stage();
-            overlayStage.initStyle(StageStyle.UNDECORATED);
-            overlayStage.initStyle(StageStyle.TRANSPARENT);
-            overlayStage.setAlwaysOnTop(true);
-            overlayStage.initModality(Modality.APPLICATION_MODAL);
-            overlayStage.setScene(scene);
+        if (!PER_SCREEN_STAGES) {
+            layoutSpanningStage(overlay);
+        }
+        if (showing) {
+            overlay.primaryStage().requestFocus();
+        }
+        overlay.screenBounds = newBounds;
+        LOG.info("Overlay follows {} screen(s): {} resized, {} removed, {} added", newBounds.size(),
+                reused, removed.size(), unmatched.size() - reused);
+    }
 
-            overlayStage.setX(minX);
-            overlayStage.setY(minY);
+    private void resizeScreenPart(Overlay overlay, ScreenPart part, Rectangle2D bounds) {
+        part.bounds = bounds;
+        sizeScreenContents(overlay, part);
+        if (part.stage != null) {
+            placeScreenStage(part);
+        }
+    }
 
-            // The focus property listener has been removed as it was not reliable.
-            
-            overlayStage.show();
-            overlayStage.requestFocus();
+    private static void removeScreenPart(Overlay overlay, ScreenPart part) {
+        overlay.parts.remove(part);
+        overlay.messageLabels.remove(part.messageLabel);
+        overlay.clickHintLabels.remove(part.clickHintLabel);
+        overlay.lockedByLabels.remove(part.lockedByLabel);
+        overlay.keystrokeDisplayLabels.remove(part.keystrokeDisplayLabel);
+        if (overlay.spiral != null) {
+            overlay.spiral.removeView(part.imageView);
+        }
+        if (part.stage != null) {
+            overlay.stages.remove(part.stage);
+            part.stage.close();
+        } else {
+            overlay.spanningRoot.getChildren().remove(part.container);
+        }
+    }
 
-            overlayStages.add(overlayStage);
-            
-            // After we are sure the window is open, mute the audio
-            audioManager.mute();
-        });
+    /** Shows on a new screen what the others show. */
+    private static void copyLabels(ScreenPart from, ScreenPart to) {
+        to.messageLabel.setText(from.messageLabel.getText());
+        to.messageLabel.setVisible(from.messageLabel.isVisible());
+        to.clickHintLabel.setVisible(from.clickHintLabel.isVisible());
+        to.lockedByLabel.setText(from.lockedByLabel.getText());
+        to.keystrokeDisplayLabel.setText(from.keystrokeDisplayLabel.getText());
+    }
+
+    private void handleKeyPressed(KeyEvent event) {
+        // --- NEW: Hide the hint on the first keypress ---
+        hideClickHint();
+
+        if (event.getText() != null && !event.getText().isEmpty()) {
+            keystrokeHistory.append(event.getText());
+        } else {
+            keystrokeHistory.append('[');
+            keystrokeHistory.append(event.getCode().name());
+            keystrokeHistory.append(']');
+        }
+        if (!keystrokeLabelsDirty) {
+            keystrokeLabelsDirty = true;
+            keystrokeRenderer.start();
+        }
+
+        // --- NEW: Restart the 5-second timer to clear history on every keystroke ---
+        keystrokeClearTimer.playFromStart();
+
+        if (event.getCode() == KeyCode.ESCAPE) {
+            // ESC releases every session's lock. Send anything still batched first so
+            // the unlock is never delayed behind it.
+            for (Map.Entry<String, WebSocketManager> session : lockingSessions.entrySet()) {
+                keystrokeBatchers.get(session.getKey()).flush();
+                session.getValue().sendMessage(session.getKey(), "unlock", null);
+                session.getValue().sendMessage(session.getKey(), "text", "UNLOCK");
+            }
+            closeOverlay(System.nanoTime());
+            event.consume();
+            return;
+        }
+
+        String character = event.getText();
+        if (character != null && !character.isEmpty()) {
+            for (KeystrokeBatcher batcher : keystrokeBatchers.values()) {
+                batcher.append(character);
+            }
+        }
+
+        chat.onKeyPressed();
     }
 
     private void hideMessageOnly() {
-        if (messageTimeline != null) messageTimeline.stop();
-        if (minDisplayTimer != null) minDisplayTimer.stop();
-        for (Label label : messageLabels) {
-            label.setVisible(false);
+        if (activeOverlay != null) {
+            for (Label label : activeOverlay.messageLabels) {
+                label.setVisible(false);
+            }
         }
-        canHideMessageByKey = false;
     }
 
-    public void hideLockOverlay() {
-        Platform.runLater(() -> {
-            audioManager.unmute();
-            if (keystrokeClearTimer != null) {
-                keystrokeClearTimer.stop();
+    @Override
+    public void hideLockOverlay(String currentUsername) {
+        long requestedAt = System.nanoTime();
+        FxThread.run(() -> {
+            lockingSessions.remove(currentUsername);
+            KeystrokeBatcher batcher = keystrokeBatchers.remove(currentUsername);
+            if (batcher != null) {
+                batcher.flush();
             }
-            for (Stage stage : overlayStages) {
-                stage.close();
+            if (!lockingSessions.isEmpty()) {
+                // Another account still holds its lock.
+                updateLockedByLabels();
+                return;
             }
-            overlayStages.clear();
-            messageLabels.clear();
-            clickHintLabels.clear();
-            keystrokeDisplayLabels.clear();
-            keystrokeHistory.setLength(0);
+            closeOverlay(requestedAt);
         });
     }
 
-    public void showMessage(String text) {
-        Platform.runLater(() -> {
-            if (overlayStages.isEmpty()) return;
-            
-            // --- NEW: Clear keystroke history when a chat message arrives ---
-            clearKeystrokeHistory();
-
-            hideMessageOnly();
+    /** Names the accounts holding the lock, so it is clear which one triggered it. */
+    private void updateLockedByLabels() {
+        if (activeOverlay == null) {
+            return;
+        }
+        String text = "Locked by " + String.join(", ", lockingSessions.keySet());
+        for (Label label : activeOverlay.lockedByLabels) {
+            label.setText(text);
+        }
+    }
 
-            for (Label label : messageLabels) {
-                label.setText(text);
-                label.setVisible(true);
-            }
-            canHideMessageByKey = false;
+    /** Takes the overlay down and releases every remaining lock. FX thread only. */
+    private void closeOverlay(long requestedAt) {
+        for (KeystrokeBatcher batcher : keystrokeBatchers.values()) {
+            batcher.flush();
+        }
+        keystrokeBatchers.clear();
+        lockingSessions.clear();
+        if (activeOverlay == null) {
+            return;
+        }
+        audioManager.unmute();
+        if (keystrokeClearTimer != null) {
+            keystrokeClearTimer.stop();
+        }
+        chat.clear();
+        clearKeystrokeHistory();
+
+        // Keep the hidden overlay around: the next lock can show it again as-is,
+        // unless the screens changed in the meantime.
+        Overlay overlay = activeOverlay;
+        activeOverlay = null;
+        overlay.close();
+        Metrics.UNLOCK_TO_CLOSED.record(System.nanoTime() - requestedAt);
+        if (overlay.spiral != null) {
+            overlay.spiral.stop();
+        }
+        if (overlay.cpuProbe != null) {
+            overlay.cpuProbe.stop();
+        }
+        for (Label hintLabel : overlay.clickHintLabels) {
+            hintLabel.setVisible(true);
+        }
+        if (prewarmedOverlay != null) {
+            prewarmedOverlay.close();
+        }
+        installScreenListener();
+        prewarmedOverlay = overlay.fits(overlay.imageName, currentScreenBounds()) ? overlay : null;
+        updateStageGauge();
+    }
 
-            messageTimeline = new Timeline(new KeyFrame(Duration.seconds(10), e -> hideMessageOnly()));
-            messageTimeline.play();
+    private void updateStageGauge() {
+        Metrics.setOverlayStages((activeOverlay != null ? activeOverlay.stages.size() : 0)
+                + (prewarmedOverlay != null ? prewarmedOverlay.stages.size() : 0));
+    }
 
-            minDisplayTimer = new PauseTransition(Duration.seconds(5));
-            minDisplayTimer.setOnFinished(e -> canHideMessageByKey = true);
-            minDisplayTimer.play();
+    @Override
+    public void showMessage(String text) {
+        FxThread.run(() -> {
+            if (activeOverlay == null) return;
+            chat.offer(text);
         });
     }
 
+    /** Puts a message from the {@link ChatScheduler} on every screen. */
+    private void displayMessage(String text) {
+        if (activeOverlay == null) {
+            return;
+        }
+        // --- NEW: Clear keystroke history when a chat message arrives ---
+        clearKeystrokeHistory();
+
+        for (Label label : activeOverlay.messageLabels) {
+            label.setText(text);
+            label.setVisible(true);
+        }
+    }
+
     /**
      * Hides the "Click anywhere" hint label on all screens.
      */
     private void hideClickHint() {
-        for (Label hintLabel : clickHintLabels) {
+        if (activeOverlay == null) {
+            return;
+        }
+        for (Label hintLabel : activeOverlay.clickHintLabels) {
             if (hintLabel.isVisible()) {
                 hintLabel.setVisible(false);
             }
@@ -264,9 +752,14 @@ public class OverlayManager {
         if (keystrokeClearTimer != null) {
             keystrokeClearTimer.stop();
         }
-        keystrokeHistory.setLength(0);
-        for (Label ksLabel : keystrokeDisplayLabels) {
+        keystrokeHistory.clear();
+        keystrokeRenderer.stop();
+        keystrokeLabelsDirty = false;
+        if (activeOverlay == null) {
+            return;
+        }
+        for (Label ksLabel : activeOverlay.keystrokeDisplayLabels) {
             ksLabel.setText("");
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,139 @@
+package de.hypno.screenlockerdesktop;
+
+import java.util.ArrayList;
+import java.util.List;
+import javafx.animation.AnimationTimer;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.paint.Color;
+
+/**
+ * Spiral renderer that draws the spiral once and animates it by rotation.
+ * <p>
+ * The spiral is rendered a single time, at most {@code hypno.spiral.renderSize} pixels
+ * square (1024 by default), cached in {@link ImageCache}, and shared by every screen.
+ * Each view scales it up to cover its screen at any angle, so even a 4K screen costs
+ * about 4 MB of image rather than one the size of its diagonal. The animation only
+ * changes the {@code rotate} property of the image views; the graphics pipeline
+ * applies scale and rotation as one transform, so nothing is redrawn per tick. Rotation updates are capped at {@code hypno.spiral.maxFps} (30 by default).
+ * Must be used on the FX application thread.
+ */
+public class ProceduralSpiral {
+
+    public static final String DISPLAY_NAME = "Procedural Spiral";
+
+    private static final int RENDER_SIZE = Integer.getInteger("hypno.spiral.renderSize", 1024);
+    private static final double MAX_FPS = Double.parseDouble(System.getProperty("hypno.spiral.maxFps", "30"));
+    private static final double DEGREES_PER_SECOND = 90;
+    private static final int ARMS = 4;
+    private static final double TURNS = 5;
+
+    private final List<ImageView> views = new ArrayList<>();
+    private final long minFrameNanos = (long) (1_000_000_000L / Math.max(1, MAX_FPS));
+    private final Image spiral;
+    // Side of each view: the diagonal of the largest area to cover.
+    private final double viewSize;
+
+    private final AnimationTimer timer = new AnimationTimer() {
+        private long startedAt = -1;
+        private long lastFrame = -1;
+
+        @Override
+        public void handle(long now) {
+            if (startedAt < 0) {
+                startedAt = now;
+            }
+            if (lastFrame >= 0 && now - lastFrame < minFrameNanos) {
+                return;
+            }
+            lastFrame = now;
+            double angle = ((now - startedAt) / 1_000_000_000.0 * DEGREES_PER_SECOND) % 360;
+            for (ImageView view : views) {
+                view.setRotate(angle);
+            }
+        }
+    };
+
+    /**
+     * @param coverWidth  width of the largest area a view has to cover
+     * @param coverHeight height of the largest area a view has to cover
+     */
+    public ProceduralSpiral(double coverWidth, double coverHeight) {
+        viewSize = Math.ceil(Math.hypot(coverWidth, coverHeight));
+        int size = (int) Math.min(viewSize, RENDER_SIZE);
+        spiral = ImageCache.get("procedural-spiral@" + size, () -> render(size));
+    }
+
+    /**
+     * Creates a view of the shared spiral centred on a {@code width x height} area. The
+     * view is larger than the area and unmanaged, so the container must clip it.
+     */
+    public ImageView createView(double width, double height) {
+        ImageView view = new ImageView(spiral);
+        view.setFitWidth(viewSize);
+        view.setFitHeight(viewSize);
+        view.setSmooth(true);
+        view.setManaged(false);
+        centerView(view, width, height);
+        views.add(view);
+        return view;
+    }
+
+    /**
+     * Centres a view on an area of a new size, e.g. after a resolution change. An area
+     * larger than the one the spiral was drawn for keeps black corners.
+     */
+    public void centerView(ImageView view, double width, double height) {
+        view.setLayoutX((width - viewSize) / 2);
+        view.setLayoutY((height - viewSize) / 2);
+    }
+
+    /** Stops animating a view whose screen went away. */
+    public void removeView(ImageView view) {
+        views.remove(view);
+    }
+
+    public void start() {
+        timer.start();
+    }
+
+    public void stop() {
+        timer.stop();
+    }
+
+    private static Image render(int size) {
+        Canvas canvas = new Canvas(size, size);
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        gc.setFill(Color.BLACK);
+        gc.fillRect(0, 0, size, size);
+        gc.setFill(Color.WHITE);
+
+        // Archimedean spiral r = b * theta; each arm is the band between the curve and a
+        // copy of it rotated by half the arm spacing.
+        double center = size / 2.0;
+        double maxTheta = TURNS * 2 * Math.PI;
+        double b = center / maxTheta;
+        double armSpacing = 2 * Math.PI / ARMS;
+        double step = 0.02;
+        for (int arm = 0; arm < ARMS; arm++) {
+            double offset = arm * armSpacing;
+            gc.beginPath();
+            gc.moveTo(center, center);
+            for (double theta = 0; theta <= maxTheta + 2 * Math.PI; theta += step) {
+                double r = b * theta;
+                gc.lineTo(center + r * Math.cos(theta + offset), center + r * Math.sin(theta + offset));
+            }
+            for (double theta = maxTheta + 2 * Math.PI; theta >= 0; theta -= step) {
+                double r = b * theta;
+                double angle = theta + offset + armSpacing / 2;
+                gc.lineTo(center + r * Math.cos(angle), center + r * Math.sin(angle));
+            }
+            gc.closePath();
+            gc.fill();
+        }
+        return canvas.snapshot(new SnapshotParameters(), null);
+    }
+}
@@ -0,0 +1,142 @@
+package de.hypno.screenlockerdesktop;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Mutes by running the platform's command-line tools: PowerShell on Windows,
+ * {@code osascript} on macOS and {@code amixer} on Linux. Every operation starts one or
+ * more child processes; on Linux this is the fallback when no Java Sound port is found.
+ */
+public class ProcessAudioBackend implements AudioBackend {
+
+    private static final String OS_NAME = System.getProperty("os.name").toLowerCase();
+
+    // Finds a volume percentage like "[80%]" in the output of "amixer sget".
+    private static final Pattern AMIXER_VOLUME = Pattern.compile("\\[(\\d+)%\\]");
+
+    // Stores the volume level (0-100) for restoration on macOS and Linux.
+    private int lastVolume = -1;
+
+    // For Windows, the mute command is a toggle. This flag tracks if the app initiated the mute.
+    private boolean appMuted = false;
+
+    // Child processes that take longer than this are killed.
+    private final long timeoutMillis;
+
+    public ProcessAudioBackend(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    public String name() {
+        return "process";
+    }
+
+    /**
+     * Mutes the system's master audio output.
+     * On Linux and macOS, it stores the current volume before muting.
+     * On Windows, it toggles the system mute state.
+     */
+    @Override
+    public void mute() throws IOException, InterruptedException {
+        try {
+            if (OS_NAME.contains("win")) {
+                // Windows: This uses PowerShell to simulate pressing the 'Mute' media key.
+                // NOTE: This is a TOGGLE and may not be reliable on all systems. A more
+                // robust solution would require external libraries like JNA.
+                executeCommand("powershell", "-c", "(New-Object -ComObject WScript.Shell).SendKeys([char]173)");
+                appMuted = true;
+
+            } else if (OS_NAME.contains("mac")) {
+                // macOS: Use osascript to get the current volume, then mute.
+                String getVolumeScript = "output volume of (get volume settings)";
+                String volumeStr = executeCommandAndGetOutput("osascript", "-e", getVolumeScript);
+                if (volumeStr != null && !volumeStr.trim().isEmpty()) {
+                    lastVolume = Integer.parseInt(volumeStr.trim());
+                }
+                executeCommand("osascript", "-e", "set volume with output muted");
+
+            } else if (OS_NAME.contains("nix") || OS_NAME.contains("nux")) {
+                // Linux: Use amixer to get the current volume from the Master channel.
+                String output = executeCommandAndGetOutput("amixer", "sget", "Master");
+                if (output != null) {
+                    Matcher matcher = AMIXER_VOLUME.matcher(output);
+                    if (matcher.find()) {
+                        lastVolume = Integer.parseInt(matcher.group(1));
+                    }
+                }
+                // Mute the Master channel.
+                executeCommand("amixer", "-q", "sset", "Master", "mute");
+            }
+        } catch (IOException | InterruptedException e) {
+            appMuted = false; // Ensure state is correct on failure.
+            throw e;
+        }
+    }
+
+    /**
+     * Unmutes the system's master audio output.
+     * On Linux and macOS, it restores the previously stored volume level.
+     * On Windows, it toggles the mute state back if the app was the one to mute it.
+     */
+    @Override
+    public void unmute() throws IOException, InterruptedException {
+        try {
+            if (OS_NAME.contains("win")) {
+                // Windows: Only toggle mute back if we were the one who initiated it.
+                if (appMuted) {
+                    executeCommand("powershell", "-c", "(New-Object -ComObject WScript.Shell).SendKeys([char]173)");
+                }
+            } else if (OS_NAME.contains("mac")) {
+                // macOS: First, unmute the audio.
+                executeCommand("osascript", "-e", "set volume without output muted");
+                // Then, restore the volume level if we have a saved state.
+                if (lastVolume != -1) {
+                     executeCommand("osascript", "-e", "set volume output volume " + lastVolume);
+                }
+            } else if (OS_NAME.contains("nix") || OS_NAME.contains("nux")) {
+                // Linux: First, unmute the Master channel.
+                executeCommand("amixer", "-q", "sset", "Master", "unmute");
+                // Then, restore the volume level if we have one saved.
+                 if (lastVolume != -1) {
+                     executeCommand("amixer", "-q", "sset", "Master", lastVolume + "%");
+                }
+            }
+        } finally {
+            // Reset state regardless of success or failure.
+            appMuted = false;
+            lastVolume = -1;
+        }
+    }
+
+    private void executeCommand(String... command) throws IOException, InterruptedException {
+        waitFor(new ProcessBuilder(command).start(), command);
+    }
+
+    private String executeCommandAndGetOutput(String... command) throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(command).start();
+        // The output of these commands is a few lines, well below the pipe buffer, so it
+        // is safe to read it only after the process has exited.
+        waitFor(process, command);
+        StringBuilder output = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                output.append(line);
+            }
+        }
+        return output.toString();
+    }
+
+    private void waitFor(Process process, String... command) throws IOException, InterruptedException {
+        if (!process.waitFor(timeoutMillis, TimeUnit.MILLISECONDS)) {
+            process.destroyForcibly();
+            throw new IOException("'" + command[0] + "' did not finish within " + timeoutMillis + " ms and was killed");
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package de.hypno.screenlockerdesktop;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Schedules reconnect attempts with exponential backoff and full jitter.
+ * <p>
+ * The n-th attempt waits a random delay between 0 and {@code min(cap, base * 2^n)}, so a
+ * fleet of clients that lost the server at the same moment spreads its reconnects out
+ * instead of coming back in lockstep. {@link #reset()} starts over from the base delay
+ * once a connection has succeeded. The delays run on one shared scheduler thread; each
+ * attempt then runs on its own virtual thread, one at a time per connection, so an
+ * attempt that blocks while tearing down an old socket holds up no other session and
+ * never runs on the WebSocket library's I/O threads. A connection that drops while an
+ * attempt is still running does not start another one alongside it; the next attempt
+ * is scheduled once the running one has returned.
+ */
+public class ReconnectScheduler {
+
+    private static final long BASE_MILLIS = Long.getLong("hypno.reconnect.baseMs", 1000);
+    private static final long CAP_MILLIS = Long.getLong("hypno.reconnect.capMs", 60000);
+
+    private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "WebSocketScheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Runnable connectAction;
+    private final long baseMillis;
+    private final long capMillis;
+
+    private int attempt = 0;
+    private ScheduledFuture<?> pending;
+    // Attempts started on a virtual thread that have not returned yet.
+    private int inFlight = 0;
+    // Set when schedule() was called while an attempt was running.
+    private boolean scheduleAfterAttempt = false;
+    // Keeps this connection's attempts from overlapping.
+    private final ReentrantLock attemptLock = new ReentrantLock();
+
+    public ReconnectScheduler(Runnable connectAction) {
+        this(connectAction, BASE_MILLIS, CAP_MILLIS);
+    }
+
+    public ReconnectScheduler(Runnable connectAction, long baseMillis, long capMillis) {
+        this.connectAction = connectAction;
+        this.baseMillis = baseMillis;
+        this.capMillis = capMillis;
+    }
+
+    /** The scheduler thread shared by all connection timers. */
+    static ScheduledExecutorService executor() {
+        return EXECUTOR;
+    }
+
+    /**
+     * Schedules the next attempt after a backoff delay.
+     *
+     * @return the chosen delay in milliseconds, or -1 if an attempt is already pending
+     *         or running
+     */
+    public synchronized long schedule() {
+        if (inFlight > 0) {
+            // The running attempt may still fail after this; decide once it has returned.
+            scheduleAfterAttempt = true;
+            return -1;
+        }
+        if (isPending()) {
+            return -1;
+        }
+        long ceiling = Math.min(capMillis, baseMillis << Math.min(attempt, 30));
+        long delay = ThreadLocalRandom.current().nextLong(ceiling + 1);
+        attempt++;
+        pending = EXECUTOR.schedule(this::startAttempt, delay, TimeUnit.MILLISECONDS);
+        return delay;
+    }
+
+    /** Runs an attempt right away, replacing any pending one. */
+    public synchronized void scheduleNow() {
+        cancel();
+        pending = EXECUTOR.schedule(this::startAttempt, 0, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void startAttempt() {
+        inFlight++;
+        Thread.ofVirtual().name("WebSocketConnect").start(() -> {
+            attemptLock.lock();
+            try {
+                connectAction.run();
+            } finally {
+                attemptLock.unlock();
+                attemptFinished();
+            }
+        });
+    }
+
+    private synchronized void attemptFinished() {
+        inFlight--;
+        if (inFlight == 0 && scheduleAfterAttempt) {
+            scheduleAfterAttempt = false;
+            schedule();
+        }
+    }
+
+    /** Cancels a pending attempt, if any. */
+    public synchronized void cancel() {
+        scheduleAfterAttempt = false;
+        if (pending != null) {
+            pending.cancel(false);
+            pending = null;
+        }
+    }
+
+    /** Starts the backoff over; called once a connection has succeeded. */
+    public synchronized void reset() {
+        attempt = 0;
+    }
+
+    public synchronized int getAttempt() {
+        return attempt;
+    }
+
+    private boolean isPending() {
+        return inFlight > 0 || (pending != null && !pending.isDone());
+    }
+}
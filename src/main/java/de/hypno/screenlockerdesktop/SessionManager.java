@@ -0,0 +1,161 @@
+package de.hypno.screenlockerdesktop;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs one authenticated session per account in this process, for machines shared by
+ * several accounts.
+ * <p>
+ * Each session is its own {@link WebSocketManager} with its own connection, reconnect
+ * backoff, heartbeat and outbox; they share one lock screen, the scheduler thread,
+ * and virtual threads for connect attempts. The primary session is the one the
+ * settings window logs in and out; the others come from the file named by
+ * {@code hypno.accounts.file}, one {@code username<TAB>password[<TAB>image]} per line
+ * ({@code #} starts a comment). Their connection events are only logged, but their
+ * locks are reported to the settings window like the primary's.
+ * <p>
+ * A session costs a few kilobytes of state plus the WebSocket library's read and
+ * write threads while connected; the library creates those as platform threads and
+ * offers no way to change that.
+ */
+public class SessionManager {
+
+    private static final String ACCOUNTS_FILE = System.getProperty("hypno.accounts.file");
+    private static final Log LOG = Log.get(SessionManager.class);
+
+    private final LockScreen lockScreen;
+    private final ConnectionListener uiListener;
+    private final Executor uiExecutor;
+    private final WebSocketManager primary;
+    private final Map<String, WebSocketManager> additional = new ConcurrentHashMap<>();
+
+    /** @param uiExecutor runs the sessions' batches of UI effects, see {@link UiBatch} */
+    public SessionManager(LockScreen lockScreen, ConnectionListener uiListener, Executor uiExecutor) {
+        this.lockScreen = lockScreen;
+        this.uiListener = uiListener;
+        this.uiExecutor = uiExecutor;
+        this.primary = WebSocketManager.create(lockScreen, uiListener, uiExecutor);
+    }
+
+    /** The session the settings window controls. */
+    public WebSocketManager getPrimary() {
+        return primary;
+    }
+
+    /**
+     * Starts a session for another account, or restarts the existing one with new
+     * credentials.
+     */
+    public WebSocketManager open(StoredCredentials credentials) {
+        WebSocketManager session = additional.computeIfAbsent(credentials.getUsername(),
+                account -> WebSocketManager.create(lockScreen, new SessionListener(account), uiExecutor));
+        session.start(credentials.getUsername(), credentials.getPassword(), credentials.getSelectedImage());
+        return session;
+    }
+
+    public void close(String account) {
+        WebSocketManager session = additional.remove(account);
+        if (session != null) {
+            session.close();
+        }
+    }
+
+    /** Closes every session, the primary included. */
+    public void closeAll() {
+        primary.close();
+        for (String account : new ArrayList<>(additional.keySet())) {
+            close(account);
+        }
+    }
+
+    /** Accounts of the additional sessions. */
+    public Collection<String> getAccounts() {
+        return additional.keySet();
+    }
+
+    /** Opens a session for every account in {@code hypno.accounts.file}, if set. */
+    public void openConfiguredAccounts() {
+        if (ACCOUNTS_FILE == null || ACCOUNTS_FILE.isEmpty()) {
+            return;
+        }
+        try {
+            for (StoredCredentials credentials : readAccounts(Paths.get(ACCOUNTS_FILE))) {
+                open(credentials);
+            }
+            LOG.info("Opened {} additional session(s) from {}", additional.size(), ACCOUNTS_FILE);
+        } catch (IOException e) {
+            LOG.warn("Could not read the accounts file {}: {}", ACCOUNTS_FILE, e.getMessage());
+        }
+    }
+
+    static List<StoredCredentials> readAccounts(Path file) throws IOException {
+        List<StoredCredentials> accounts = new ArrayList<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\t");
+            if (fields.length < 2) {
+                LOG.warn("Skipping an accounts file line without a password");
+                continue;
+            }
+            StoredCredentials credentials = new StoredCredentials(fields[0].trim(), fields[1],
+                    fields.length > 2 ? fields[2].trim() : "Spiral 1");
+            if (credentials.isComplete()) {
+                accounts.add(credentials);
+            }
+        }
+        return accounts;
+    }
+
+    /** Connection events of an additional session: logged, and its locks shown in the UI. */
+    private final class SessionListener implements ConnectionListener {
+        private final String account;
+
+        SessionListener(String account) {
+            this.account = account;
+        }
+
+        @Override
+        public void notifyConnectionOpened(String username) {
+            LOG.info("Session {} connected", account);
+        }
+
+        @Override
+        public void notifyConnectionClosed(String reason) {
+            LOG.info("Session {} disconnected: {}", account, reason);
+        }
+
+        @Override
+        public void notifyConnectionFailed(String message) {
+            LOG.warn("Session {} failed: {}", account, message);
+        }
+
+        @Override
+        public void notifyControllerCommandResult(String command, String result) {
+        }
+
+        @Override
+        public void updateControllerList(List<String> users) {
+        }
+
+        @Override
+        public void updateControlledUsers(ControlledUsersModel.Update update) {
+        }
+
+        @Override
+        public void notifyLockChanged(String account, boolean locked) {
+            uiListener.notifyLockChanged(account, locked);
+        }
+    }
+}
@@ -3,6 +3,7 @@ package de.hypno.screenlockerdesktop;
 import javafx.animation.KeyFrame;
 import javafx.animation.Timeline;
 import javafx.application.Platform;
+import javafx.beans.binding.Bindings;
 import javafx.collections.FXCollections;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
@@ -12,13 +13,11 @@ import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
-import java.util.Arrays;
-import java.util.Base64;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
-import java.util.prefs.Preferences;
-import java.util.stream.Collectors;
 
-public class SettingsController {
+public class SettingsController implements ConnectionListener {
 
     @FXML private TextField usernameField;
     @FXML private PasswordField passwordField;
@@ -42,9 +41,14 @@ public class SettingsController {
     @FXML private Button removeControllerButton;
     @FXML private Button listControllersButton;
 
+    // --- Controlled users dashboard ---
+    @FXML private TitledPane controlledUsersPane;
+    @FXML private ListView<ControlledUser> controlledUsersListView;
+    @FXML private Label controlledUsersSummaryLabel;
+
 
     private WebSocketManager webSocketManager;
-    private Preferences prefs;
+    private final ControlledUsersModel controlledUsers = new ControlledUsersModel();
 
     private Timeline autoUnpauseTimeline;
     private Timeline statusUpdateTimeline;
@@ -53,29 +57,34 @@ public class SettingsController {
     private enum State { DISCONNECTED, CONNECTED, PAUSED }
     private volatile State currentState = State.DISCONNECTED;
 
-    private static final String USERNAME_KEY = "Username";
-    private static final String PASSWORD_KEY = "UserPassword";
-    private static final String SELECTED_IMAGE_KEY = "SelectedImage";
     private static final DateTimeFormatter TIME_FORMATTER_STATUS = DateTimeFormatter.ofPattern("HH:mm:ss");
     private static final DateTimeFormatter TIME_FORMATTER_PAUSE = DateTimeFormatter.ofPattern("HH:mm");
 
 
     @FXML
     public void initialize() {
-        prefs = Preferences.userNodeForPackage(SettingsController.class);
-        imageComboBox.setItems(FXCollections.observableArrayList("Spiral 1", "Spiral 2"));
+        imageComboBox.setItems(FXCollections.observableArrayList("Spiral 1", "Spiral 2", ProceduralSpiral.DISPLAY_NAME));
         loadSettings();
+        controlledUsersListView.setItems(controlledUsers.getUsers());
+        controlledUsersListView.setCellFactory(view -> new ControlledUserCell());
+        // Rows of one height let the list view lay out only the visible ones.
+        controlledUsersListView.setFixedCellSize(24);
+        controlledUsersSummaryLabel.textProperty().bind(Bindings.format("%d users, %d online, %d locked",
+                Bindings.size(controlledUsers.getUsers()), controlledUsers.onlineCountProperty(),
+                controlledUsers.lockedCountProperty()));
         setUiState(State.DISCONNECTED, "Disconnected");
-
-        if (!usernameField.getText().isEmpty() && !passwordField.getText().isEmpty()) {
-            Platform.runLater(this::handleConnectButton);
-        }
+        // A stored login is connected by MainApp before this window exists; see showConnecting().
     }
 
     public void setWebSocketManager(WebSocketManager manager) {
         this.webSocketManager = manager;
     }
 
+    /** Called when the stored login was already sent off to connect before the UI loaded. */
+    public void showConnecting() {
+        updateStatus("Connecting...", false);
+    }
+
     @FXML
     private void handleConnectButton() {
         updateStatus("Connecting...", false);
@@ -95,11 +104,11 @@ public class SettingsController {
         if (autoUnpauseTimeline != null) autoUnpauseTimeline.stop();
         if (statusUpdateTimeline != null) statusUpdateTimeline.stop();
         webSocketManager.close();
-        prefs.remove(USERNAME_KEY);
-        prefs.remove(PASSWORD_KEY);
+        StoredCredentials.clear();
         usernameField.clear();
         passwordField.clear();
         controllerListView.getItems().clear(); // Clear the list on logout
+        controlledUsers.clear();
         setUiState(State.DISCONNECTED, "Logged out. Credentials cleared.");
     }
 
@@ -181,30 +190,35 @@ public class SettingsController {
         webSocketManager.listControllers();
     }
 
+    @Override
     public void notifyConnectionOpened(String username) {
-        Platform.runLater(() -> {
+        FxThread.run(() -> {
             setUiState(State.CONNECTED, "Connected as " + username);
             handleListControllersButton();
         });
     }
 
+    @Override
     public void notifyConnectionClosed(String reason) {
-        Platform.runLater(() -> {
+        FxThread.run(() -> {
             if (currentState != State.PAUSED) {
                 setUiState(State.DISCONNECTED, "Disconnected. " + reason);
                 controllerListView.getItems().clear();
+                controlledUsers.clear();
             }
         });
     }
 
+    @Override
     public void notifyConnectionFailed(String message) {
-        Platform.runLater(() -> {
+        FxThread.run(() -> {
             setUiState(State.DISCONNECTED, message);
         });
     }
     
+    @Override
     public void notifyControllerCommandResult(String command, String result) {
-        Platform.runLater(() -> {
+        FxThread.run(() -> {
             String action = command.equals("add") ? "add" : "remove";
             if ("success".equalsIgnoreCase(result)) {
                 updateStatus("Successfully " + (action.equals("add") ? "added" : "removed") + " controller.", false);
@@ -215,25 +229,92 @@ public class SettingsController {
         });
     }
     
-    public void updateControllerList(String jsonList) {
-        Platform.runLater(() -> {
-            if (jsonList == null || !jsonList.startsWith("[") || !jsonList.endsWith("]")) {
+    @Override
+    public void updateControllerList(List<String> users) {
+        FxThread.run(() -> {
+            if (users == null) {
                 updateStatus("Failed to parse controller list.", true);
                 return;
             }
-            String content = jsonList.substring(1, jsonList.length() - 1).trim();
-            if(content.isEmpty()){
-                controllerListView.setItems(FXCollections.observableArrayList());
-                return;
+            if (!controllerListView.getItems().equals(users)) {
+                controllerListView.getItems().setAll(users);
+            }
+            if (!users.isEmpty()) {
+                updateStatus("Controller list updated.", false);
             }
-            String[] users = content.split(",");
-            controllerListView.setItems(FXCollections.observableArrayList(Arrays.stream(users)
-                .map(u -> u.trim().replace("\"", ""))
-                .collect(Collectors.toList())));
-            updateStatus("Controller list updated.", false);
         });
     }
 
+    @Override
+    public void updateControlledUsers(ControlledUsersModel.Update update) {
+        FxThread.run(() -> controlledUsers.apply(update));
+    }
+
+    @Override
+    public void notifyLockChanged(String account, boolean locked) {
+        updateStatus(locked ? "Locked by a controller of " + account + "." : "Unlocked " + account + ".", false);
+    }
+
+    /**
+     * Parses the {@code data} of a {@code list_ctrl} reply, a JSON array of user names,
+     * in one pass. Gives the same result as the old split on commas: each name is trimmed
+     * and loses its quotes, and trailing empty entries are dropped.
+     *
+     * @return the names, or {@code null} if {@code jsonList} is not wrapped in brackets
+     */
+    public static List<String> parseControllerList(String jsonList) {
+        if (jsonList == null || !jsonList.startsWith("[") || !jsonList.endsWith("]")) {
+            return null;
+        }
+        int start = 1;
+        int end = jsonList.length() - 1;
+        while (start < end && jsonList.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && jsonList.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        // String.split drops trailing empty entries.
+        while (end > start && jsonList.charAt(end - 1) == ',') {
+            end--;
+        }
+        List<String> users = new ArrayList<>();
+        if (start == end) {
+            return users;
+        }
+        while (true) {
+            int comma = jsonList.indexOf(',', start);
+            int valueEnd = comma < 0 || comma > end ? end : comma;
+            users.add(stripQuotes(jsonList, start, valueEnd));
+            if (valueEnd == end) {
+                return users;
+            }
+            start = valueEnd + 1;
+        }
+    }
+
+    /** The trimmed text between {@code start} and {@code end} without any quotes. */
+    private static String stripQuotes(String text, int start, int end) {
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        int quote = text.indexOf('"', start);
+        if (quote < 0 || quote >= end) {
+            return text.substring(start, end);
+        }
+        StringBuilder name = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c != '"') {
+                name.append(c);
+            }
+        }
+        return name.toString();
+    }
+
 
     private void setUiState(State newState, String statusMessage) {
         this.currentState = newState;
@@ -284,6 +365,8 @@ public class SettingsController {
         
         controllerManagementPane.setVisible(isConnected);
         controllerManagementPane.setManaged(isConnected);
+        controlledUsersPane.setVisible(isConnected);
+        controlledUsersPane.setManaged(isConnected);
     }
 
     private void updatePauseStatus() {
@@ -294,7 +377,7 @@ public class SettingsController {
     }
 
     public void updateStatus(String text, boolean isError) {
-        Platform.runLater(() -> {
+        FxThread.run(() -> {
             statusLabel.setText(String.format("[%s] %s", TIME_FORMATTER_STATUS.format(LocalDateTime.now()), text));
             if (isError) {
                 statusLabel.setStyle("-fx-text-fill: red;");
@@ -305,14 +388,13 @@ public class SettingsController {
     }
 
     private void loadSettings() {
-        usernameField.setText(prefs.get(USERNAME_KEY, ""));
-        passwordField.setText(new String(Base64.getDecoder().decode(prefs.get(PASSWORD_KEY, ""))));
-        imageComboBox.setValue(prefs.get(SELECTED_IMAGE_KEY, "Spiral 1"));
+        StoredCredentials credentials = StoredCredentials.load();
+        usernameField.setText(credentials.getUsername());
+        passwordField.setText(credentials.getPassword());
+        imageComboBox.setValue(credentials.getSelectedImage());
     }
 
     private void saveSettings() {
-        prefs.put(USERNAME_KEY, usernameField.getText());
-        prefs.put(PASSWORD_KEY, Base64.getEncoder().encodeToString(passwordField.getText().getBytes()));
-        prefs.put(SELECTED_IMAGE_KEY, imageComboBox.getValue());
+        new StoredCredentials(usernameField.getText(), passwordField.getText(), imageComboBox.getValue()).save();
     }
 }
\ No newline at end of file
@@ -0,0 +1,85 @@
+package de.hypno.screenlockerdesktop;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records how long after process start the application reached each startup
+ * milestone, so cold starts can be compared between builds and machines.
+ * <p>
+ * Each mark is kept the first time it is reached; the summary is logged once the
+ * first authentication succeeds and is also part of {@link Metrics}. For the CDS
+ * training run in {@code compile.sh}, {@code hypno.startup.exitAfter=window} (or
+ * {@code authenticated}) exits the application a short while after that mark, once
+ * the classes a normal session needs have been loaded.
+ */
+public final class StartupTimeline {
+
+    public enum Mark {
+        FX_STARTED("fxStarted"), WINDOW_SHOWN("window"), CONNECTED("connected"), AUTHENTICATED("authenticated");
+
+        private final String label;
+
+        Mark(String label) {
+            this.label = label;
+        }
+    }
+
+    private static final String EXIT_AFTER = System.getProperty("hypno.startup.exitAfter");
+    // Time for the window to render and the overlay to pre-build before a training run exits.
+    private static final long EXIT_DELAY_MILLIS = 3000;
+    private static final Log LOG = Log.get(StartupTimeline.class);
+
+    private static final long START_MILLIS = processStartMillis();
+    private static final AtomicLongArray MARKS = unset();
+
+    private StartupTimeline() {
+    }
+
+    private static AtomicLongArray unset() {
+        AtomicLongArray marks = new AtomicLongArray(Mark.values().length);
+        for (int i = 0; i < marks.length(); i++) {
+            marks.set(i, -1);
+        }
+        return marks;
+    }
+
+    /** Prefers the start of the process, which includes the launcher, over the JVM's. */
+    private static long processStartMillis() {
+        return ProcessHandle.current().info().startInstant()
+                .map(instant -> instant.toEpochMilli())
+                .orElseGet(() -> ManagementFactory.getRuntimeMXBean().getStartTime());
+    }
+
+    public static void mark(Mark mark) {
+        long elapsed = System.currentTimeMillis() - START_MILLIS;
+        if (!MARKS.compareAndSet(mark.ordinal(), -1, elapsed)) {
+            return;
+        }
+        if (mark == Mark.AUTHENTICATED) {
+            LOG.info("Startup: {}", summary());
+        }
+        if (EXIT_AFTER != null && EXIT_AFTER.equals(mark.label)) {
+            LOG.info("Startup training run reached {}, exiting. {}", mark, summary());
+            ReconnectScheduler.executor().schedule(() -> System.exit(0), EXIT_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** Milliseconds from process start to the mark, or -1 if it was not reached yet. */
+    public static long get(Mark mark) {
+        return MARKS.get(mark.ordinal());
+    }
+
+    public static String summary() {
+        StringBuilder out = new StringBuilder();
+        for (Mark mark : Mark.values()) {
+            if (out.length() > 0) {
+                out.append(", ");
+            }
+            long millis = get(mark);
+            out.append(mark.label).append('=').append(millis < 0 ? "-" : millis + " ms");
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,69 @@
+package de.hypno.screenlockerdesktop;
+
+import java.util.Base64;
+import java.util.prefs.Preferences;
+
+/**
+ * The login remembered in the user's preferences: username, password and chosen image.
+ * Read by {@link MainApp} before the UI exists, so the connection can start right away,
+ * and by {@link SettingsController} to fill in the form.
+ */
+public final class StoredCredentials {
+
+    private static final String USERNAME_KEY = "Username";
+    private static final String PASSWORD_KEY = "UserPassword";
+    private static final String SELECTED_IMAGE_KEY = "SelectedImage";
+    private static final String DEFAULT_IMAGE = "Spiral 1";
+
+    private final String username;
+    private final String password;
+    private final String selectedImage;
+
+    public StoredCredentials(String username, String password, String selectedImage) {
+        this.username = username;
+        this.password = password;
+        this.selectedImage = selectedImage;
+    }
+
+    private static Preferences prefs() {
+        return Preferences.userNodeForPackage(StoredCredentials.class);
+    }
+
+    public static StoredCredentials load() {
+        Preferences prefs = prefs();
+        return new StoredCredentials(prefs.get(USERNAME_KEY, ""),
+                new String(Base64.getDecoder().decode(prefs.get(PASSWORD_KEY, ""))),
+                prefs.get(SELECTED_IMAGE_KEY, DEFAULT_IMAGE));
+    }
+
+    public void save() {
+        Preferences prefs = prefs();
+        prefs.put(USERNAME_KEY, username);
+        prefs.put(PASSWORD_KEY, Base64.getEncoder().encodeToString(password.getBytes()));
+        prefs.put(SELECTED_IMAGE_KEY, selectedImage);
+    }
+
+    /** Forgets the username and password; the image choice is kept. */
+    public static void clear() {
+        Preferences prefs = prefs();
+        prefs.remove(USERNAME_KEY);
+        prefs.remove(PASSWORD_KEY);
+    }
+
+    /** Whether there is enough to log in without asking. */
+    public boolean isComplete() {
+        return !username.trim().isEmpty() && !password.trim().isEmpty();
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public String getSelectedImage() {
+        return selectedImage;
+    }
+}
@@ -0,0 +1,71 @@
+package de.hypno.screenlockerdesktop;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Collects UI effects and runs them together as a single task on the UI executor.
+ * <p>
+ * An effect put under a key replaces the pending effect with the same key, so a burst
+ * like lock, unlock, lock only applies the final state; effects added without a key all
+ * run, in the order they were added. The batch stays open until the executor actually
+ * runs it, so everything that arrives before the next FX pulse lands in the same task.
+ */
+public class UiBatch {
+
+    private static final Log LOG = Log.get(UiBatch.class);
+
+    private final Executor executor;
+    // The same task every time, so an executor holding tasks back can tell batches apart.
+    private final Runnable runTask = this::runPending;
+
+    // Guarded by "this".
+    private Map<Object, Runnable> pending = new LinkedHashMap<>();
+    private boolean scheduled = false;
+
+    /** @param executor runs a batch, e.g. on the FX thread; {@code Runnable::run} runs it in place */
+    public UiBatch(Executor executor) {
+        this.executor = executor;
+    }
+
+    /** Adds an effect that supersedes any pending effect with the same key. */
+    public synchronized void put(Object key, Runnable effect) {
+        // Re-inserting moves the effect behind everything that arrived in between.
+        pending.remove(key);
+        pending.put(key, effect);
+    }
+
+    /** Adds an effect that always runs. */
+    public synchronized void add(Runnable effect) {
+        pending.put(new Object(), effect);
+    }
+
+    /** Hands the pending effects to the executor, unless a batch is already waiting to run. */
+    public void submit() {
+        synchronized (this) {
+            if (scheduled || pending.isEmpty()) {
+                return;
+            }
+            scheduled = true;
+        }
+        executor.execute(runTask);
+    }
+
+    private void runPending() {
+        Map<Object, Runnable> effects;
+        synchronized (this) {
+            effects = pending;
+            pending = new LinkedHashMap<>();
+            scheduled = false;
+        }
+        Metrics.uiBatch();
+        for (Runnable effect : effects.values()) {
+            try {
+                effect.run();
+            } catch (RuntimeException e) {
+                LOG.error("UI update failed: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -1,194 +1,444 @@
 package de.hypno.screenlockerdesktop;
 
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
 import java.net.URISyntaxException;
-import java.time.LocalTime;
-import java.time.format.DateTimeFormatter;
+import org.java_websocket.WebSocket;
 import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.extensions.IExtension;
+import org.java_websocket.extensions.permessage_deflate.PerMessageDeflateExtension;
+import org.java_websocket.exceptions.WebsocketNotConnectedException;
+import org.java_websocket.framing.CloseFrame;
+import org.java_websocket.framing.Framedata;
+import org.java_websocket.framing.TextFrame;
 import org.java_websocket.handshake.ServerHandshake;
+import org.java_websocket.protocols.IProtocol;
+import org.java_websocket.protocols.Protocol;
 
-public class WebSocketManager implements Runnable {
+public class WebSocketManager {
 
-    private static final String WEBSOCKET_URI = "wss://ws.3409.de:8082";
-    private WebSocketClient webSocketClient;
-    private final OverlayManager overlayManager;
-    private final SettingsController settingsController;
+    /** The hypno server, overridable with {@code hypno.ws.uri} (e.g. a local stand-in). */
+    public static final String DEFAULT_URI = System.getProperty("hypno.ws.uri", "wss://ws.3409.de:8082");
+    // Offer permessage-deflate and the compact apiVersion 3 envelope; the server may decline either.
+    private static final boolean OFFER_DEFLATE = !"false".equals(System.getProperty("hypno.ws.deflate"));
+    private static final boolean OFFER_COMPACT = !"false".equals(System.getProperty("hypno.protocol.compact"));
+
+    private final String websocketUri;
+    // Created on the first connect and reused for every reconnect afterwards.
+    private volatile WebSocketClient webSocketClient;
+    private final LockScreen overlayManager;
+    private final ConnectionListener settingsController;
+    private final ReconnectScheduler reconnectScheduler = new ReconnectScheduler(this::connectWebSocket);
+    private final Heartbeat heartbeat = new Heartbeat(this::sendHeartbeatPing, this::onHeartbeatExpired);
+    // Without a heartbeat there are no pongs to acknowledge frames with.
+    private final Outbox outbox = new Outbox(!heartbeat.isEnabled());
+    // Decodes and routes inbound frames off the read thread; UI effects go through uiBatch.
+    private final UiBatch uiBatch;
+    private final InboundDispatcher inbound;
 
     private String username;
     private String password;
     private String selectedImage;
 
+    private final MessageEncoder encoder = new MessageEncoder();
+    private final TextFrame outboundFrame = new TextFrame();
+
     private volatile boolean running = false;
-    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm:ss.SSS");
+    // Set once the server accepted our auth on the current connection; the outbox waits for it.
+    private volatile boolean authenticated = false;
+    // Set while we close the previous connection ourselves before reusing the client.
+    private volatile boolean replacingConnection = false;
+    // Set when the heartbeat dropped the connection, so the next attempt starts right away.
+    private volatile boolean heartbeatExpired = false;
+    // Whether the current connection negotiated permessage-deflate. Guarded by encoder.
+    private boolean deflateActive = false;
+    // When the last auth frame was sent, to measure the auth round trip.
+    private volatile long authSentNanos = -1;
+    private static final Log LOG = Log.get(WebSocketManager.class);
 
 
-    public WebSocketManager(OverlayManager overlayManager, SettingsController controller) {
-        this.overlayManager = overlayManager;
-        this.settingsController = controller;
+    public static WebSocketManager create(LockScreen overlayManager, ConnectionListener controller, Executor uiExecutor) {
+        return create(DEFAULT_URI, overlayManager, controller, uiExecutor);
+    }
+
+    /** Runs UI effects on the dispatcher thread, for listeners that don't need the FX thread. */
+    public static WebSocketManager create(String websocketUri, LockScreen overlayManager, ConnectionListener controller) {
+        return create(websocketUri, overlayManager, controller, Runnable::run);
     }
 
-    private void log(String message) {
-        System.out.println(String.format("[%s] [WebSocketManager] %s", LocalTime.now().format(TIME_FORMATTER), message));
+    /** @param uiExecutor runs each batch of UI effects, e.g. on the FX thread */
+    public static WebSocketManager create(String websocketUri, LockScreen overlayManager, ConnectionListener controller,
+                                          Executor uiExecutor) {
+        WebSocketManager manager = new WebSocketManager(websocketUri, overlayManager, controller, uiExecutor);
+        // The handlers capture the manager, so they are registered once it is fully built.
+        manager.registerHandlers();
+        return manager;
+    }
+
+    private WebSocketManager(String websocketUri, LockScreen overlayManager, ConnectionListener controller,
+                             Executor uiExecutor) {
+        this.websocketUri = websocketUri;
+        this.overlayManager = overlayManager;
+        this.settingsController = controller;
+        this.uiBatch = new UiBatch(uiExecutor);
+        this.inbound = new InboundDispatcher(uiBatch);
     }
 
     public void start(String username, String password, String selectedImage) {
-        log("START called for user: " + username);
+        LOG.info("START called for user: {}", username);
+        if (this.username != null && !this.username.equals(username)) {
+            // Frames queued for another account must not be replayed under this one.
+            outbox.clear();
+        }
+        outbox.useJournalFor(username);
         this.username = username;
         this.password = password;
         this.selectedImage = selectedImage;
         this.running = true;
-        Thread thread = new Thread(this);
-        thread.setName("WebSocketThread");
-        thread.setDaemon(true);
-        thread.start();
+        reconnectScheduler.reset();
+        reconnectScheduler.scheduleNow();
+    }
+
+    /** The account this session logs in as, or null before the first start. */
+    public String getUsername() {
+        return username;
     }
 
     public void close() {
-        log("CLOSE called. Setting running = false and closing client.");
+        LOG.info("CLOSE called. Setting running = false and closing client.");
         running = false;
-        if (webSocketClient != null) {
-            webSocketClient.close();
+        reconnectScheduler.cancel();
+        heartbeat.stop();
+        // Lets the dispatcher thread end, so a closed session is not kept alive by it.
+        inbound.close();
+        WebSocketClient client = webSocketClient;
+        if (client != null) {
+            client.close();
         }
     }
 
-    @Override
-    public void run() {
-        try {
-            connectWebSocket();
-        } catch (URISyntaxException e) {
-            log("URISyntaxException: " + e.getMessage());
-            settingsController.notifyConnectionFailed("Invalid WebSocket URI.");
+    /**
+     * Opens the connection. Runs on the reconnect scheduler's thread, which is allowed
+     * to block while an old connection is torn down.
+     */
+    private void connectWebSocket() {
+        if (!running) {
+            LOG.info("CONNECT aborted because 'running' is false.");
+            return;
+        }
+        WebSocketClient client = webSocketClient;
+        if (client == null) {
+            try {
+                client = createClient();
+            } catch (URISyntaxException e) {
+                LOG.error("URISyntaxException: {}", e.getMessage());
+                running = false;
+                settingsController.notifyConnectionFailed("Invalid WebSocket URI.");
+                return;
+            }
+            webSocketClient = client;
+            LOG.info("Connecting to {}", websocketUri);
+            heartbeat.start();
+            client.connect();
+            return;
+        }
+
+        if (!client.isClosed()) {
+            // Close the old connection first so its onClose doesn't schedule yet another attempt.
+            replacingConnection = true;
+            try {
+                client.closeBlocking();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                replacingConnection = false;
+            }
         }
+        LOG.info("RECONNECTING to {} (attempt {})", websocketUri, reconnectScheduler.getAttempt());
+        Metrics.reconnectAttempt();
+        heartbeat.start();
+        client.reconnect();
     }
 
-    private void connectWebSocket() throws URISyntaxException {
-        log("Connecting to " + WEBSOCKET_URI);
-        webSocketClient = new WebSocketClient(new URI(WEBSOCKET_URI)) {
+    private WebSocketClient createClient() throws URISyntaxException {
+        WebSocketClient client = new WebSocketClient(new URI(websocketUri), createDraft()) {
             @Override
             public void onOpen(ServerHandshake handshakedata) {
-                log("ON_OPEN: Connection established. Sending auth command.");
+                LOG.info("ON_OPEN: Connection established. Sending auth command.");
+                Metrics.connectionOpened();
+                StartupTimeline.mark(StartupTimeline.Mark.CONNECTED);
+                applyNegotiatedProtocol(this);
                 sendAuthMessage();
             }
 
             @Override
             public void onMessage(String message) {
-                log("ON_MESSAGE: Received: " + message);
-                handleMessage(message);
+                long receivedAt = System.nanoTime();
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("ON_MESSAGE: Received {} chars", message.length());
+                }
+                heartbeat.onTraffic();
+                // A closed session acts on nothing that was still on its way.
+                if (running) {
+                    inbound.enqueue(message, receivedAt);
+                }
+            }
+
+            @Override
+            public void onWebsocketPong(WebSocket conn, Framedata f) {
+                heartbeat.onPong();
+                outbox.acknowledge();
+                if (authenticated) {
+                    outbox.flush(WebSocketManager.this::sendNow);
+                }
             }
 
             @Override
             public void onClose(int code, String reason, boolean remote) {
-                log(String.format("ON_CLOSE: Code: %d, Reason: '%s', Remote: %b. Current 'running' state is %b.", code, reason, remote, running));
+                LOG.info("ON_CLOSE: Code: {}, Reason: '{}', Remote: {}. Current 'running' state is {}.", code, reason, remote, running);
+                Metrics.connectionClosed();
+                authenticated = false;
+                outbox.rewind();
+                if (replacingConnection) {
+                    return;
+                }
+                heartbeat.stop();
                 settingsController.notifyConnectionClosed(reason);
-                if (running) {
-                    reconnect();
+                if (!running) {
+                    return;
+                }
+                if (heartbeatExpired) {
+                    heartbeatExpired = false;
+                    LOG.info("RECONNECTING right away after the heartbeat timeout.");
+                    reconnectScheduler.scheduleNow();
+                } else {
+                    scheduleReconnect();
                 }
             }
 
             @Override
             public void onError(Exception ex) {
-                log("ON_ERROR: " + ex.getClass().getSimpleName() + " - " + ex.getMessage());
+                LOG.warn("ON_ERROR: {} - {}", ex.getClass().getSimpleName(), ex.getMessage());
             }
         };
-        webSocketClient.connect();
+        // The heartbeat replaces the library's own, much slower, lost-connection check.
+        client.setConnectionLostTimeout(0);
+        return client;
     }
 
-    private void reconnect() {
-        if (!running) {
-            log("RECONNECT aborted because 'running' is false.");
-            return;
+    private static Draft_6455 createDraft() {
+        List<IExtension> extensions = OFFER_DEFLATE
+                ? Collections.singletonList(new PerMessageDeflateExtension())
+                : Collections.emptyList();
+        // The empty protocol accepts a server that selects no subprotocol, i.e. speaks v2.
+        List<IProtocol> protocols = OFFER_COMPACT
+                ? List.of(new Protocol(MessageEncoder.COMPACT_PROTOCOL), new Protocol(""))
+                : List.of(new Protocol(""));
+        return new Draft_6455(extensions, protocols);
+    }
+
+    /** Switches the encoder to whatever this connection's handshake settled on. */
+    private void applyNegotiatedProtocol(WebSocketClient client) {
+        boolean compact = false;
+        boolean deflate = false;
+        // The client's own draft is only the offer; the connection holds the negotiated copy.
+        if (client.getConnection().getDraft() instanceof Draft_6455) {
+            Draft_6455 draft = (Draft_6455) client.getConnection().getDraft();
+            compact = draft.getProtocol() != null
+                    && MessageEncoder.COMPACT_PROTOCOL.equals(draft.getProtocol().getProvidedProtocol());
+            deflate = draft.getExtension() instanceof PerMessageDeflateExtension;
         }
-        try {
-            log("RECONNECT scheduled in 5 seconds...");
-            Thread.sleep(5000);
-            log("RECONNECTING now...");
-            connectWebSocket();
-        } catch (InterruptedException | URISyntaxException e) {
-            Thread.currentThread().interrupt();
-            log("RECONNECT FAILED: " + e.getMessage());
-            settingsController.notifyConnectionFailed("Reconnect failed.");
+        synchronized (encoder) {
+            encoder.setCompact(compact);
+            deflateActive = deflate;
         }
+        LOG.info("Negotiated apiVersion {}, permessage-deflate {}", compact ? 3 : 2, deflate ? "on" : "off");
     }
 
-    private void handleMessage(String message) {
+    private boolean sendHeartbeatPing() {
+        WebSocketClient client = webSocketClient;
+        if (client == null || !client.isOpen()) {
+            return false;
+        }
         try {
-            String cmd = getJsonValue(message, "cmd");
-            String data = getJsonValue(message, "data");
+            outbox.markPing();
+            client.sendPing();
+            return true;
+        } catch (WebsocketNotConnectedException e) {
+            return false;
+        }
+    }
+
+    /** Runs on the scheduler thread when nothing was heard from the server in time. */
+    private void onHeartbeatExpired() {
+        WebSocketClient client = webSocketClient;
+        if (!running || client == null) {
+            return;
+        }
+        LOG.warn("No heartbeat from the server in time, dropping the connection.");
+        Metrics.heartbeatTimeout();
+        heartbeatExpired = true;
+        // Tear the socket down without a close handshake; a dead peer would never answer it.
+        client.closeConnection(CloseFrame.ABNORMAL_CLOSE, "Heartbeat timeout");
+    }
+
+    /** Round trip of the last answered heartbeat ping in nanoseconds, or -1. */
+    public long getLastHeartbeatRttNanos() {
+        return heartbeat.getLastRttNanos();
+    }
+
+    private void scheduleReconnect() {
+        long delay = reconnectScheduler.schedule();
+        if (delay >= 0) {
+            LOG.info("RECONNECT scheduled in {} ms.", delay);
+        }
+    }
 
-            if (cmd == null) {
-                log("Could not parse 'cmd' from message: " + message);
+    /**
+     * Wires each inbound command to its handler. Handlers run on the dispatcher thread;
+     * lock state and the controller list are keyed in the UI batch, so only the last of
+     * several updates in one batch is applied.
+     */
+    private void registerHandlers() {
+        inbound.register(Command.AUTH, this::handleAuth);
+        inbound.register(Command.LOCK, message -> {
+            String account = this.username;
+            long receivedAt = message.receivedNanos();
+            uiBatch.put(Command.LOCK, () -> {
+                overlayManager.showLockOverlay(account, selectedImage, this, receivedAt);
+                settingsController.notifyLockChanged(account, true);
+            });
+        });
+        inbound.register(Command.UNLOCK, message -> {
+            String account = this.username;
+            uiBatch.put(Command.LOCK, () -> {
+                overlayManager.hideLockOverlay(account);
+                settingsController.notifyLockChanged(account, false);
+            });
+        });
+        inbound.register(Command.CHAT, message -> {
+            // The overlay's chat scheduler queues them; none is lost here.
+            String text = message.data();
+            uiBatch.add(() -> overlayManager.showMessage(text));
+        });
+        inbound.register(Command.CONTROLLED_USERS_UPDATE, message -> {
+            // Parsed here, off the FX thread. Deltas build on each other; every one of them is applied.
+            ControlledUsersModel.Update update;
+            try {
+                update = ControlledUsersModel.parse(message.data());
+            } catch (IllegalArgumentException e) {
+                LOG.warn("Ignoring malformed controlled users update: {}", e.getMessage());
                 return;
             }
+            uiBatch.add(() -> settingsController.updateControlledUsers(update));
+        });
+        // --- NEW COMMANDS ---
+        inbound.register(Command.ADD_CTRL, message -> {
+            String result = message.data();
+            uiBatch.add(() -> settingsController.notifyControllerCommandResult("add", result));
+        });
+        inbound.register(Command.REMOVE_CTRL, message -> {
+            String result = message.data();
+            uiBatch.add(() -> settingsController.notifyControllerCommandResult("remove", result));
+        });
+        inbound.register(Command.LIST_CTRL, message -> {
+            List<String> users = SettingsController.parseControllerList(message.data());
+            uiBatch.put(Command.LIST_CTRL, () -> settingsController.updateControllerList(users));
+        });
+    }
 
-            switch (cmd) {
-                case "auth":
-                    if ("success".equals(data)) {
-                        log("Authentication successful.");
-                        // --- NEW REQUIREMENT ---
-                        // Send device type information upon successful authentication.
-                        sendMessage("SYS", "set_device_type", "1");
-                        settingsController.notifyConnectionOpened(this.username);
-                    } else {
-                        log("Authentication failed. Reason: " + data);
-                        settingsController.notifyConnectionFailed("Auth failed: " + data);
-                        close();
-                    }
-                    break;
-                case "lock":
-                    overlayManager.showLockOverlay(this.username, selectedImage, this);
-                    break;
-                case "unlock":
-                    overlayManager.hideLockOverlay();
-                    break;
-                case "chat":
-                    overlayManager.showMessage(data);
-                    break;
-                case "controlled_users_update":
-                    log("Received status update for controlled users: " + data);
-                    break;
-                // --- NEW COMMANDS ---
-                case "add_ctrl":
-                    settingsController.notifyControllerCommandResult("add", data);
-                    break;
-                case "remove_ctrl":
-                    settingsController.notifyControllerCommandResult("remove", data);
-                    break;
-                case "list_ctrl":
-                    settingsController.updateControllerList(data);
-                    break;
-                default:
-                    log("Received unknown command: " + cmd);
-                    break;
-            }
-        } catch (Exception e) {
-            log("Failed to process incoming message: " + message + ". Error: " + e.getMessage());
+    private void handleAuth(InboundMessage message) {
+        long sentAt = authSentNanos;
+        if (sentAt >= 0) {
+            Metrics.AUTH_ROUND_TRIP.record(System.nanoTime() - sentAt);
+            authSentNanos = -1;
+        }
+        if (message.dataEquals("success")) {
+            LOG.info("Authentication successful.");
+            StartupTimeline.mark(StartupTimeline.Mark.AUTHENTICATED);
+            reconnectScheduler.reset();
+            // --- NEW REQUIREMENT ---
+            // Send device type information upon successful authentication.
+            sendMessage("SYS", "set_device_type", "1");
+            authenticated = true;
+            // Replay what was queued while we were away, in order.
+            outbox.flush(this::sendNow);
+            String account = this.username;
+            uiBatch.add(() -> {
+                // onClose reports a connection that dropped before this batch ran.
+                if (authenticated) {
+                    settingsController.notifyConnectionOpened(account);
+                }
+                // Build the lock overlay now, so a later "lock" only has to show it.
+                overlayManager.prewarmLockOverlay(selectedImage);
+            });
+        } else {
+            String data = message.data();
+            LOG.warn("Authentication failed. Reason: {}", data);
+            uiBatch.add(() -> settingsController.notifyConnectionFailed("Auth failed: " + data));
+            close();
         }
     }
 
     private void sendAuthMessage() {
+        authSentNanos = System.nanoTime();
         sendMessage(this.username, "auth", this.password);
     }
 
+    /**
+     * Sends a frame. Commands the {@link Outbox} accepts are queued and sent in order once
+     * the connection is authenticated; anything else is sent only if the connection is open.
+     */
     public void sendMessage(String target, String cmd, Object data) {
-        if (webSocketClient != null && webSocketClient.isOpen()) {
-            String dataJson;
-            if (data == null) {
-                dataJson = "null";
-            } else if (data instanceof String) {
-                String escapedData = ((String) data).replace("\\", "\\\\").replace("\"", "\\\"");
-                dataJson = "\"" + escapedData + "\"";
-            } else {
-                dataJson = data.toString();
+        if ((data == null || data instanceof String) && Outbox.accepts(Command.lookup(cmd))) {
+            outbox.offer(target, cmd, (String) data);
+            if (authenticated) {
+                outbox.flush(this::sendNow);
             }
+            return;
+        }
+        sendNow(target, cmd, data);
+    }
 
-            String jsonMessage = String.format(
-                "{\"target\": \"%s\", \"cmd\": \"%s\", \"data\": %s, \"apiVersion\": 2}",
-                target, cmd, dataJson
-            );
-
-            log("SENDING message: " + jsonMessage);
-            webSocketClient.send(jsonMessage);
+    private boolean sendNow(String target, String cmd, Object data) {
+        WebSocketClient client = webSocketClient;
+        if (client == null || !client.isOpen()) {
+            return false;
+        }
+        // The encoder and the frame are reused, so encoding and handing the bytes to
+        // the socket must not interleave between threads. The library copies the
+        // payload into its own output buffer inside sendFrame.
+        int bytes;
+        synchronized (encoder) {
+            ByteBuffer payload = encoder.encode(target, cmd, data);
+            bytes = payload.remaining();
+            if (deflateActive) {
+                // The deflate extension compresses the whole backing array, so it
+                // needs a buffer of exactly the payload's size.
+                byte[] exact = new byte[bytes];
+                payload.get(exact);
+                payload = ByteBuffer.wrap(exact);
+            }
+            // The extension marks compressed frames with RSV1; clear it from the last send.
+            outboundFrame.setRSV1(false);
+            outboundFrame.setPayload(payload);
+            try {
+                client.sendFrame(outboundFrame);
+            } catch (WebsocketNotConnectedException e) {
+                return false;
+            }
+        }
+        Command command = Command.lookup(cmd);
+        Metrics.frameOut(command, bytes);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("SENDING {} to {}: {}", cmd, target, String.valueOf(Log.redact(command, data)));
         }
+        return true;
     }
     
     // --- NEW PUBLIC METHODS FOR CONTROLLERS ---
@@ -204,53 +454,4 @@ public class WebSocketManager implements Runnable {
         // "target" is our own username for this command
         sendMessage(this.username, "list_ctrl", null);
     }
-
-
-    /**
-     * A simple, robust parser to extract a value from a JSON string.
-     * It handles whitespace and distinguishes between quoted strings and other values.
-     */
-    private String getJsonValue(String json, String key) {
-        // This parser needs to handle json arrays for the list_ctrl command.
-        // For simplicity, we assume the 'data' value is either a simple value or a well-formed array.
-        String keyPattern = "\"" + key + "\":";
-        int keyIndex = json.indexOf(keyPattern);
-        if (keyIndex == -1) {
-            return null;
-        }
-
-        int currentIndex = keyIndex + keyPattern.length();
-
-        // Skip leading whitespace to find the start of the value
-        while (currentIndex < json.length() && Character.isWhitespace(json.charAt(currentIndex))) {
-            currentIndex++;
-        }
-
-        if (currentIndex >= json.length()) {
-            return null; // No value found
-        }
-
-        char startChar = json.charAt(currentIndex);
-        if (startChar == '\"') {
-            // Value is a quoted string
-            int valueStartIndex = currentIndex + 1;
-            int valueEndIndex = json.indexOf('\"', valueStartIndex);
-            if (valueEndIndex == -1) return null;
-            return json.substring(valueStartIndex, valueEndIndex);
-        } else if (startChar == '[') {
-            // Value is a JSON array
-            int arrayEndIndex = json.indexOf(']', currentIndex);
-            if (arrayEndIndex == -1) return null;
-            return json.substring(currentIndex, arrayEndIndex + 1);
-        }
-        else {
-            // Value is not a quoted string (e.g., number, boolean, null)
-            int valueEndIndex = json.indexOf(',', currentIndex);
-            if (valueEndIndex == -1) {
-                valueEndIndex = json.indexOf('}', currentIndex);
-            }
-            if (valueEndIndex == -1) return null;
-            return json.substring(currentIndex, valueEndIndex).trim();
-        }
-    }
 }
\ No newline at end of file
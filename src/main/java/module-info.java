@@ -8,6 +8,9 @@ module de.hypno.screenlockerdesktop {
     // Required for the Preferences API (saving settings)
     requires java.prefs;
 
+    // Required for ThreadMXBean, used to measure CPU time per overlay frame
+    requires java.management;
+
     // Required for the WebSocket library
     requires org.java_websocket;
 